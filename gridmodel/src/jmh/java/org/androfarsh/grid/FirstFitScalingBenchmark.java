@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Authored by Anton Kuhlevskyi <anton.kuhleskiy@gmail.com>
+ */
+package org.androfarsh.grid;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serial first fit against the banded search of {@link ParallelFirstFit}
+ * with no size threshold, used to pick
+ * {@link ParallelFirstFit#MIN_PARALLEL_CELLS}. The only fit is at the bottom
+ * of the grid, so both scan all of it.
+ * <p>
+ * The banded search runs on 1 worker, which is the fork/join overhead
+ * alone, on 2 and 4 workers and on one worker per core of the host
+ * (parallelism 0). Speedup only shows on a host with that many cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FirstFitScalingBenchmark {
+	private static final int SPAN = 2;
+
+	@Param({ "16", "24", "32", "48", "64", "96", "128" })
+	public int size;
+
+	private final GridModel mGrid = new GridModel();
+
+	@State(Scope.Benchmark)
+	public static class Pool {
+		// 0 is one worker per core
+		@Param({ "1", "2", "4", "0" })
+		public int parallelism;
+
+		ForkJoinPool pool;
+
+		@Setup
+		public void setUp() {
+			pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime
+					.getRuntime().availableProcessors());
+		}
+
+		@TearDown
+		public void tearDown() {
+			pool.shutdown();
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		mGrid.setGeometry(0, 0, 1, size, size);
+		for (int r = 0; r < (size - SPAN); ++r) {
+			for (int c = 0; c < size; ++c) {
+				mGrid.occupy(c, r, 1, 1, mGrid.indexOf(c, r) + 1);
+			}
+		}
+	}
+
+	@Benchmark
+	public int serial() {
+		return mGrid.findFreeCell(SPAN, SPAN, GridModel.FREE);
+	}
+
+	@Benchmark
+	public int banded(Pool pool) {
+		return ParallelFirstFit.findFreeCell(pool.pool, mGrid, SPAN, SPAN,
+				GridModel.FREE, 0);
+	}
+}
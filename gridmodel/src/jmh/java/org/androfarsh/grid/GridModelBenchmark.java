@@ -0,0 +1,158 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Authored by Anton Kuhlevskyi <anton.kuhleskiy@gmail.com>
+ */
+package org.androfarsh.grid;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * First fit, hover and drop resolution, reorder plans and bulk placement of
+ * {@link GridModel} on square grids from 4x4 to 64x64.
+ * <p>
+ * All but the two bottom rows are taken by 1x1 owners, so first fit of a
+ * 2x2 area scans nearly the whole grid, which is the slow case of a full
+ * home screen.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GridModelBenchmark {
+	private static final int CELL_SIZE = 100;
+
+	private static final int SPAN = 2;
+
+	@Param({ "4", "8", "16", "32", "64" })
+	public int size;
+
+	private final GridModel mGrid = new GridModel();
+
+	private final GridModel mEmptyGrid = new GridModel();
+
+	private final GridModel mReorderGrid = new GridModel();
+
+	private final GridModel.Area mArea = new GridModel.Area();
+
+	private int mHoverLeft;
+
+	private int mHoverTop;
+
+	private int mCount;
+	private int[] mOwners;
+	private int[] mPreferredCells;
+	private int[] mHorizontalSizes;
+	private int[] mVerticalSizes;
+	private int[] mCells;
+
+	// the owners under a dragged 2x2 area, kept at their own cells
+	private final int[] mReorderOwners = new int[SPAN * SPAN];
+	private final int[] mReorderPreferredCells = new int[SPAN * SPAN];
+	private final int[] mReorderSizes = new int[SPAN * SPAN];
+	private final int[] mReorderCells = new int[SPAN * SPAN];
+	private int mDragColumn;
+	private int mDragRow;
+
+	@Setup
+	public void setUp() {
+		mGrid.setGeometry(0, 0, CELL_SIZE, size, size);
+		for (int r = 0; r < (size - SPAN); ++r) {
+			for (int c = 0; c < size; ++c) {
+				mGrid.occupy(c, r, 1, 1, mGrid.indexOf(c, r) + 1);
+			}
+		}
+		mEmptyGrid.setGeometry(0, 0, CELL_SIZE, size, size);
+
+		// a bit off the middle cell, the way a finger drags
+		mHoverLeft = ((size / 2) * CELL_SIZE) + (CELL_SIZE / 3);
+		mHoverTop = ((size / 2) * CELL_SIZE) - (CELL_SIZE / 4);
+
+		mCount = (size / SPAN) * (size / SPAN);
+		mOwners = new int[mCount];
+		mPreferredCells = new int[mCount];
+		mHorizontalSizes = new int[mCount];
+		mVerticalSizes = new int[mCount];
+		mCells = new int[mCount];
+		for (int i = 0; i < mCount; ++i) {
+			mOwners[i] = i + 1;
+			mPreferredCells[i] = GridModel.NO_CELL;
+			mHorizontalSizes[i] = SPAN;
+			mVerticalSizes[i] = SPAN;
+		}
+
+		// the dragged area hovers the middle of the taken rows
+		mDragColumn = (size - SPAN) / 2;
+		mDragRow = Math.max(0, ((size - SPAN) / 2) - 1);
+		for (int i = 0; i < (SPAN * SPAN); ++i) {
+			final int cell = mGrid.indexOf(mDragColumn + (i % SPAN), mDragRow
+					+ (i / SPAN));
+			mReorderOwners[i] = mGrid.getOwner(cell);
+			mReorderPreferredCells[i] = cell;
+			mReorderSizes[i] = 1;
+		}
+	}
+
+	@Benchmark
+	public int firstFit() {
+		return mGrid.findFreeCell(SPAN, SPAN, GridModel.FREE);
+	}
+
+	@Benchmark
+	public boolean hover() {
+		return mGrid.findHoveredCells(mHoverLeft, mHoverTop, mHoverLeft
+				+ (SPAN * CELL_SIZE), mHoverTop + (SPAN * CELL_SIZE), SPAN,
+				SPAN, mArea);
+	}
+
+	@Benchmark
+	public int drop() {
+		// hovered and own cells are both taken, so it falls to first fit
+		mArea.set(size / 2, 0, SPAN, SPAN);
+		return mGrid.resolveDrop(mArea, true, 0, 0, SPAN, SPAN, 1);
+	}
+
+	@Benchmark
+	public int[] reorder() {
+		// a plan is solved on a copy with the dragged area blocked
+		mReorderGrid.set(mGrid);
+		mReorderGrid.occupy(mDragColumn, mDragRow, SPAN, SPAN,
+				GridModel.BLOCKED);
+		PlacementPlanner.place(mReorderGrid, SPAN * SPAN, mReorderOwners,
+				mReorderPreferredCells, mReorderSizes, mReorderSizes,
+				mReorderCells, null);
+		return mReorderCells;
+	}
+
+	@Benchmark
+	public int[] bulkInsert() {
+		mEmptyGrid.clear();
+		PlacementPlanner.place(mEmptyGrid, mCount, mOwners, mPreferredCells,
+				mHorizontalSizes, mVerticalSizes, mCells, null);
+		return mCells;
+	}
+}
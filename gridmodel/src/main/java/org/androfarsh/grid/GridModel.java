@@ -0,0 +1,547 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Authored by Anton Kuhlevskyi <anton.kuhleskiy@gmail.com>
+ */
+package org.androfarsh.grid;
+
+import java.util.Arrays;
+
+/**
+ * Platform independent model of the DragGridLayout grid: cell geometry,
+ * occupancy, placement and hover/drop resolution.
+ * <p>
+ * Cells are addressed by column and row (or by row-major index) and are owned
+ * by positive int keys, {@link #FREE} marks an empty cell. The model uses
+ * plain int arrays only, so it can be exercised on a plain JVM.
+ */
+public final class GridModel {
+	public static class Area {
+		public int column;
+		public int row;
+		public int horizontalSize;
+		public int verticalSize;
+
+		public boolean isEmpty() {
+			return (horizontalSize <= 0) || (verticalSize <= 0);
+		}
+
+		public void set(int column, int row, int horizontalSize,
+				int verticalSize) {
+			this.column = column;
+			this.row = row;
+			this.horizontalSize = horizontalSize;
+			this.verticalSize = verticalSize;
+		}
+
+		public void set(Area area) {
+			set(area.column, area.row, area.horizontalSize, area.verticalSize);
+		}
+
+		public void setEmpty() {
+			set(0, 0, 0, 0);
+		}
+
+		public boolean intersects(int column, int row, int horizontalSize,
+				int verticalSize) {
+			return !isEmpty() && (column < (this.column + this.horizontalSize))
+					&& (this.column < (column + horizontalSize))
+					&& (row < (this.row + this.verticalSize))
+					&& (this.row < (row + verticalSize));
+		}
+
+		@Override
+		public String toString() {
+			return "[c=" + column + ";r=" + row + "] [h=" + horizontalSize
+					+ ";v=" + verticalSize + "]";
+		}
+	}
+
+	public static final int NO_CELL = -1;
+
+	public static final int FREE = 0;
+
+	// owner used to block cells which belong to no child
+	public static final int BLOCKED = Integer.MAX_VALUE;
+
+	private int mLeft;
+
+	private int mTop;
+
+	private int mCellSize;
+
+	private int mColumns;
+
+	private int mRows;
+
+	private int[] mOwners = new int[0];
+
+	public GridModel() {
+	}
+
+	public GridModel(int left, int top, int cellSize, int columns, int rows) {
+		setGeometry(left, top, cellSize, columns, rows);
+	}
+
+	public void setGeometry(int left, int top, int cellSize, int columns,
+			int rows) {
+		mLeft = left;
+		mTop = top;
+		mCellSize = Math.max(0, cellSize);
+		mColumns = Math.max(0, columns);
+		mRows = Math.max(0, rows);
+
+		final int count = mColumns * mRows;
+		if (mOwners.length != count) {
+			mOwners = new int[count];
+		} else {
+			clear();
+		}
+	}
+
+	/**
+	 * Copies geometry and occupancy of the given model, reusing the owners
+	 * array when it has the same size.
+	 */
+	public void set(GridModel model) {
+		mLeft = model.mLeft;
+		mTop = model.mTop;
+		mCellSize = model.mCellSize;
+		mColumns = model.mColumns;
+		mRows = model.mRows;
+		if (mOwners.length != model.mOwners.length) {
+			mOwners = new int[model.mOwners.length];
+		}
+		System.arraycopy(model.mOwners, 0, mOwners, 0, mOwners.length);
+	}
+
+	public int getLeft() {
+		return mLeft;
+	}
+
+	public int getTop() {
+		return mTop;
+	}
+
+	public int getCellSize() {
+		return mCellSize;
+	}
+
+	public int getColumns() {
+		return mColumns;
+	}
+
+	public int getRows() {
+		return mRows;
+	}
+
+	public int getCellCount() {
+		return mOwners.length;
+	}
+
+	public boolean isEmpty() {
+		return (mOwners.length == 0) || (mCellSize <= 0);
+	}
+
+	public int indexOf(int column, int row) {
+		return (row * mColumns) + column;
+	}
+
+	public int getColumn(int index) {
+		return index % mColumns;
+	}
+
+	public int getRow(int index) {
+		return index / mColumns;
+	}
+
+	public int getCellLeft(int column) {
+		return mLeft + (column * mCellSize);
+	}
+
+	public int getCellTop(int row) {
+		return mTop + (row * mCellSize);
+	}
+
+	/**
+	 * @return index of the cell which contains the given point or
+	 *         {@link #NO_CELL}
+	 */
+	public int findCellAt(int x, int y) {
+		if (isEmpty() || (x < mLeft) || (y < mTop)) {
+			return NO_CELL;
+		}
+		final int column = (x - mLeft) / mCellSize;
+		final int row = (y - mTop) / mCellSize;
+		if ((column >= mColumns) || (row >= mRows)) {
+			return NO_CELL;
+		}
+		return indexOf(column, row);
+	}
+
+	/**
+	 * @return index of the cell whose left-top corner is exactly the given
+	 *         position or {@link #NO_CELL}
+	 */
+	public int findCellByPosition(int x, int y) {
+		final int index = findCellAt(x, y);
+		if ((index == NO_CELL) || (((x - mLeft) % mCellSize) != 0)
+				|| (((y - mTop) % mCellSize) != 0)) {
+			return NO_CELL;
+		}
+		return index;
+	}
+
+	public void clear() {
+		Arrays.fill(mOwners, FREE);
+	}
+
+	public int getOwner(int index) {
+		return mOwners[index];
+	}
+
+	public int getOwner(int column, int row) {
+		return mOwners[indexOf(column, row)];
+	}
+
+	public boolean isInside(int column, int row, int horizontalSize,
+			int verticalSize) {
+		return (column >= 0) && (row >= 0) && (horizontalSize > 0)
+				&& (verticalSize > 0)
+				&& ((column + horizontalSize) <= mColumns)
+				&& ((row + verticalSize) <= mRows);
+	}
+
+	/**
+	 * @return true if the area lies inside of the grid and every cell of it is
+	 *         free or belongs to the ignored owner
+	 */
+	public boolean isFree(int column, int row, int horizontalSize,
+			int verticalSize, int ignoredOwner) {
+		if (!isInside(column, row, horizontalSize, verticalSize)) {
+			return false;
+		}
+		for (int r = row; r < (row + verticalSize); ++r) {
+			int index = indexOf(column, r);
+			for (int c = 0; c < horizontalSize; ++c, ++index) {
+				final int owner = mOwners[index];
+				if ((owner != FREE) && (owner != ignoredOwner)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Marks the part of the area which lies inside of the grid as owned by the
+	 * given owner.
+	 */
+	public void occupy(int column, int row, int horizontalSize,
+			int verticalSize, int owner) {
+		final int fromColumn = Math.max(0, column);
+		final int toColumn = Math.min(mColumns, column + horizontalSize);
+		final int fromRow = Math.max(0, row);
+		final int toRow = Math.min(mRows, row + verticalSize);
+		for (int r = fromRow; r < toRow; ++r) {
+			final int offset = r * mColumns;
+			for (int c = fromColumn; c < toColumn; ++c) {
+				mOwners[offset + c] = owner;
+			}
+		}
+	}
+
+	/**
+	 * Marks every cell intersecting the given pixel rect as owned by the given
+	 * owner.
+	 */
+	public void occupyRect(int left, int top, int right, int bottom,
+			int owner) {
+		if (isEmpty() || (right <= left) || (bottom <= top)) {
+			return;
+		}
+		final int fromColumn = floorDiv(left - mLeft, mCellSize);
+		final int fromRow = floorDiv(top - mTop, mCellSize);
+		final int toColumn = floorDiv((right - 1) - mLeft, mCellSize);
+		final int toRow = floorDiv((bottom - 1) - mTop, mCellSize);
+		occupy(fromColumn, fromRow, (toColumn - fromColumn) + 1,
+				(toRow - fromRow) + 1, owner);
+	}
+
+	/**
+	 * @return true if every cell intersecting the given pixel rect lies inside
+	 *         of the grid and is free or belongs to the ignored owner
+	 */
+	public boolean isRectFree(int left, int top, int right, int bottom,
+			int ignoredOwner) {
+		return isRectFree(left, top, right, bottom, ignoredOwner, null);
+	}
+
+	/**
+	 * Same as {@link #isRectFree(int, int, int, int, int)}, cells of the
+	 * blocked area (if any) are taken as occupied.
+	 */
+	public boolean isRectFree(int left, int top, int right, int bottom,
+			int ignoredOwner, Area blockedArea) {
+		if (isEmpty() || (right <= left) || (bottom <= top)) {
+			return false;
+		}
+		final int fromColumn = floorDiv(left - mLeft, mCellSize);
+		final int fromRow = floorDiv(top - mTop, mCellSize);
+		final int toColumn = floorDiv((right - 1) - mLeft, mCellSize);
+		final int toRow = floorDiv((bottom - 1) - mTop, mCellSize);
+		final int horizontalSize = (toColumn - fromColumn) + 1;
+		final int verticalSize = (toRow - fromRow) + 1;
+		if ((blockedArea != null)
+				&& blockedArea.intersects(fromColumn, fromRow, horizontalSize,
+						verticalSize)) {
+			return false;
+		}
+		return isFree(fromColumn, fromRow, horizontalSize, verticalSize,
+				ignoredOwner);
+	}
+
+	public void release(int owner) {
+		for (int i = 0; i < mOwners.length; ++i) {
+			if (mOwners[i] == owner) {
+				mOwners[i] = FREE;
+			}
+		}
+	}
+
+	/**
+	 * Frees the cells of the area which belong to the given owner, the
+	 * incremental form of {@link #release(int)} for an owner with a known
+	 * area.
+	 */
+	public void release(int column, int row, int horizontalSize,
+			int verticalSize, int owner) {
+		final int fromColumn = Math.max(0, column);
+		final int toColumn = Math.min(mColumns, column + horizontalSize);
+		final int fromRow = Math.max(0, row);
+		final int toRow = Math.min(mRows, row + verticalSize);
+		for (int r = fromRow; r < toRow; ++r) {
+			final int offset = r * mColumns;
+			for (int c = fromColumn; c < toColumn; ++c) {
+				if (mOwners[offset + c] == owner) {
+					mOwners[offset + c] = FREE;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collects distinct owners of the area, skipping the ignored one.
+	 *
+	 * @return number of owners written to {@code outOwners}
+	 */
+	public int collectOwners(int column, int row, int horizontalSize,
+			int verticalSize, int ignoredOwner, int[] outOwners) {
+		int count = 0;
+		final int fromColumn = Math.max(0, column);
+		final int toColumn = Math.min(mColumns, column + horizontalSize);
+		final int fromRow = Math.max(0, row);
+		final int toRow = Math.min(mRows, row + verticalSize);
+		for (int r = fromRow; r < toRow; ++r) {
+			for (int c = fromColumn; c < toColumn; ++c) {
+				final int owner = mOwners[indexOf(c, r)];
+				if ((owner == FREE) || (owner == ignoredOwner)
+						|| (owner == BLOCKED)) {
+					continue;
+				}
+
+				boolean found = false;
+				for (int i = 0; i < count; ++i) {
+					if (outOwners[i] == owner) {
+						found = true;
+						break;
+					}
+				}
+				if (!found && (count < outOwners.length)) {
+					outOwners[count++] = owner;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Row-major first fit search of a free area of the given size.
+	 *
+	 * @return index of the left-top cell of the area or {@link #NO_CELL}
+	 */
+	public int findFreeCell(int horizontalSize, int verticalSize,
+			int ignoredOwner) {
+		return findFreeCell(horizontalSize, verticalSize, ignoredOwner, 0,
+				mRows);
+	}
+
+	/**
+	 * Row-major first fit search limited to anchors in rows
+	 * {@code [fromRow, toRow)}.
+	 */
+	public int findFreeCell(int horizontalSize, int verticalSize,
+			int ignoredOwner, int fromRow, int toRow) {
+		final int lastRow = Math.min(toRow, (mRows - verticalSize) + 1);
+		final int lastColumn = (mColumns - horizontalSize) + 1;
+		for (int r = Math.max(0, fromRow); r < lastRow; ++r) {
+			for (int c = 0; c < lastColumn; ++c) {
+				if (isFree(c, r, horizontalSize, verticalSize, ignoredOwner)) {
+					return indexOf(c, r);
+				}
+			}
+		}
+		return NO_CELL;
+	}
+
+	/**
+	 * Search of the free area of the given size whose left-top cell is the
+	 * closest (in rings of growing chessboard distance, row-major within a
+	 * ring) to the given one.
+	 *
+	 * @return index of the left-top cell of the area or {@link #NO_CELL}
+	 */
+	public int findNearestFreeCell(int horizontalSize, int verticalSize,
+			int ignoredOwner, int column, int row) {
+		final int maxDistance = Math.max(mColumns, mRows);
+		for (int d = 0; d <= maxDistance; ++d) {
+			for (int r = row - d; r <= (row + d); ++r) {
+				// inner rows of a ring hold its left and right cells only
+				final int step = (d == 0) || (r == (row - d))
+						|| (r == (row + d)) ? 1 : 2 * d;
+				for (int c = column - d; c <= (column + d); c += step) {
+					if (isFree(c, r, horizontalSize, verticalSize,
+							ignoredOwner)) {
+						return indexOf(c, r);
+					}
+				}
+			}
+		}
+		return NO_CELL;
+	}
+
+	/**
+	 * Resolves the cells hovered by a dragged pixel rect. The area grows from
+	 * the corner of the rect which lies closest to a cell corner, the same
+	 * way a launcher snaps a widget.
+	 *
+	 * @return true if the whole span is hovered, in the other case
+	 *         {@code outArea} holds the part of it inside of the grid
+	 */
+	public boolean findHoveredCells(int left, int top, int right, int bottom,
+			int horizontalSize, int verticalSize, Area outArea) {
+		outArea.setEmpty();
+
+		final int gridRight = getCellLeft(mColumns);
+		final int gridBottom = getCellTop(mRows);
+		left = Math.max(left, mLeft);
+		top = Math.max(top, mTop);
+		right = Math.min(right, gridRight);
+		bottom = Math.min(bottom, gridBottom);
+		if (isEmpty() || (right <= left) || (bottom <= top)) {
+			return false;
+		}
+
+		final int fromColumn = (left - mLeft) / mCellSize;
+		final int fromRow = (top - mTop) / mCellSize;
+		final int toColumn = ((right - 1) - mLeft) / mCellSize;
+		final int toRow = ((bottom - 1) - mTop) / mCellSize;
+
+		final int cellsLeft = getCellLeft(fromColumn);
+		final int cellsTop = getCellTop(fromRow);
+		final int cellsRight = getCellLeft(toColumn + 1);
+		final int cellsBottom = getCellTop(toRow + 1);
+
+		final int lt = getDistance(cellsLeft, cellsTop, left, top);
+		final int rt = getDistance(right, cellsTop, cellsRight, top);
+		final int lb = getDistance(cellsLeft, bottom, left, cellsBottom);
+		final int rb = getDistance(right, bottom, cellsRight, cellsBottom);
+
+		final int min = Math.min(Math.min(lt, rt), Math.min(lb, rb));
+		final int column;
+		final int row;
+		if (min == lt) {
+			column = fromColumn;
+			row = fromRow;
+		} else if (min == rt) {
+			column = (toColumn - horizontalSize) + 1;
+			row = fromRow;
+		} else if (min == lb) {
+			column = fromColumn;
+			row = (toRow - verticalSize) + 1;
+		} else {
+			column = (toColumn - horizontalSize) + 1;
+			row = (toRow - verticalSize) + 1;
+		}
+
+		final int clippedColumn = Math.max(0, column);
+		final int clippedRow = Math.max(0, row);
+		outArea.set(clippedColumn, clippedRow,
+				Math.min(mColumns, column + horizontalSize) - clippedColumn,
+				Math.min(mRows, row + verticalSize) - clippedRow);
+		if (outArea.isEmpty()) {
+			outArea.setEmpty();
+			return false;
+		}
+		return (outArea.horizontalSize == horizontalSize)
+				&& (outArea.verticalSize == verticalSize);
+	}
+
+	/**
+	 * Resolves where a dragged owner lands: the hovered area if it is
+	 * complete and free, the current position if it is still free, the first
+	 * free area otherwise.
+	 *
+	 * @return index of the left-top cell or {@link #NO_CELL}
+	 */
+	public int resolveDrop(Area hoveredArea, boolean hoverComplete, int column,
+			int row, int horizontalSize, int verticalSize, int owner) {
+		if (hoverComplete
+				&& isFree(hoveredArea.column, hoveredArea.row,
+						horizontalSize, verticalSize, owner)) {
+			return indexOf(hoveredArea.column, hoveredArea.row);
+		}
+		if (isFree(column, row, horizontalSize, verticalSize, owner)) {
+			return indexOf(column, row);
+		}
+		return findFreeCell(horizontalSize, verticalSize, owner);
+	}
+
+	private static int getDistance(int l, int t, int r, int b) {
+		final int w = r - l;
+		final int h = b - t;
+		return (w * w) + (h * h);
+	}
+
+	private static int floorDiv(int x, int y) {
+		int q = x / y;
+		if (((x % y) != 0) && ((x ^ y) < 0)) {
+			--q;
+		}
+		return q;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		for (int r = 0; r < mRows; ++r) {
+			for (int c = 0; c < mColumns; ++c) {
+				final int owner = getOwner(c, r);
+				builder.append(owner == FREE ? "." : (owner == BLOCKED ? "#"
+						: Integer.toString(owner % 10)));
+			}
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+}
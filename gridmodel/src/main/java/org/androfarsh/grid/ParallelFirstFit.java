@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Authored by Anton Kuhlevskyi <anton.kuhleskiy@gmail.com>
+ */
+package org.androfarsh.grid;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * First fit search of {@link GridModel} split over bands of anchor rows on a
+ * fork/join pool.
+ * <p>
+ * Every band looks for its own first fit and the upper band wins, so the
+ * result is the same cell the serial row-major search finds. Bands below a
+ * row which already has a fit stop early. The grid must not be changed
+ * while a search runs.
+ */
+public final class ParallelFirstFit {
+	// smaller grids are searched serially, a 64x36 home screen (2304 cells)
+	// included. On a single core host FirstFitScalingBenchmark puts a serial
+	// scan at about 1.8us on 64x64 and a banded one at 6us on one worker and
+	// 10us on two or four, it was slower at every size measured. Whether
+	// more cores make it pay off past 128x128 needs a run on such a host
+	public static final int MIN_PARALLEL_CELLS = 128 * 128;
+
+	private static final int MIN_BAND_ROWS = 2;
+
+	// bands per worker, a few more than one keeps workers busy when some
+	// bands stop early
+	private static final int BANDS_PER_THREAD = 4;
+
+	private static final class BandTask extends RecursiveTask<Integer> {
+		private static final long serialVersionUID = 1L;
+
+		private final GridModel mGrid;
+		private final int mHorizontalSize;
+		private final int mVerticalSize;
+		private final int mIgnoredOwner;
+		private final int mFromRow;
+		private final int mToRow;
+		private final int mBandRows;
+
+		// upmost row with a fit found so far
+		private final AtomicInteger mFoundRow;
+
+		BandTask(GridModel grid, int horizontalSize, int verticalSize,
+				int ignoredOwner, int fromRow, int toRow, int bandRows,
+				AtomicInteger foundRow) {
+			mGrid = grid;
+			mHorizontalSize = horizontalSize;
+			mVerticalSize = verticalSize;
+			mIgnoredOwner = ignoredOwner;
+			mFromRow = fromRow;
+			mToRow = toRow;
+			mBandRows = bandRows;
+			mFoundRow = foundRow;
+		}
+
+		@Override
+		protected Integer compute() {
+			if ((mToRow - mFromRow) > mBandRows) {
+				final int middle = (mFromRow + mToRow) >>> 1;
+				final BandTask lower = new BandTask(mGrid, mHorizontalSize,
+						mVerticalSize, mIgnoredOwner, middle, mToRow,
+						mBandRows, mFoundRow);
+				lower.fork();
+				final int upper = new BandTask(mGrid, mHorizontalSize,
+						mVerticalSize, mIgnoredOwner, mFromRow, middle,
+						mBandRows, mFoundRow).compute();
+				final int found = lower.join();
+				return upper != GridModel.NO_CELL ? upper : found;
+			}
+
+			for (int r = mFromRow; r < mToRow; ++r) {
+				if (r > mFoundRow.get()) {
+					break;
+				}
+				final int index = mGrid.findFreeCell(mHorizontalSize,
+						mVerticalSize, mIgnoredOwner, r, r + 1);
+				if (index != GridModel.NO_CELL) {
+					int foundRow;
+					do {
+						foundRow = mFoundRow.get();
+					} while ((r < foundRow)
+							&& !mFoundRow.compareAndSet(foundRow, r));
+					return index;
+				}
+			}
+			return GridModel.NO_CELL;
+		}
+	}
+
+	private ParallelFirstFit() {
+	}
+
+	/**
+	 * @return the same cell as
+	 *         {@link GridModel#findFreeCell(int, int, int)} would
+	 */
+	public static int findFreeCell(ForkJoinPool pool, GridModel grid,
+			int horizontalSize, int verticalSize, int ignoredOwner) {
+		return findFreeCell(pool, grid, horizontalSize, verticalSize,
+				ignoredOwner, MIN_PARALLEL_CELLS);
+	}
+
+	static int findFreeCell(ForkJoinPool pool, GridModel grid,
+			int horizontalSize, int verticalSize, int ignoredOwner,
+			int minParallelCells) {
+		final int rows = (grid.getRows() - verticalSize) + 1;
+		final int bandRows = Math.max(MIN_BAND_ROWS, rows
+				/ (pool.getParallelism() * BANDS_PER_THREAD));
+		if ((grid.getCellCount() < minParallelCells) || (rows <= bandRows)) {
+			return grid.findFreeCell(horizontalSize, verticalSize,
+					ignoredOwner);
+		}
+
+		final BandTask task = new BandTask(grid, horizontalSize,
+				verticalSize, ignoredOwner, 0, rows, bandRows,
+				new AtomicInteger(Integer.MAX_VALUE));
+		// run inline when already on a worker of the pool
+		return ForkJoinTask.getPool() == pool ? task.invoke() : pool
+				.invoke(task);
+	}
+}
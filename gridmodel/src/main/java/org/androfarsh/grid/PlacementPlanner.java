@@ -0,0 +1,69 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Authored by Anton Kuhlevskyi <anton.kuhleskiy@gmail.com>
+ */
+package org.androfarsh.grid;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Places areas on a {@link GridModel} one after another, the way layout
+ * placement and reorder plans are solved.
+ */
+public final class PlacementPlanner {
+	private PlacementPlanner() {
+	}
+
+	/**
+	 * Every area is moved out of its own cells (if it has an owner) and kept
+	 * at its preferred cell when that is free, or put to the first free one
+	 * otherwise. Areas without an owner occupy their cells as
+	 * {@link GridModel#BLOCKED}.
+	 *
+	 * @param outCells
+	 *            gets solved left-top cells, {@link GridModel#NO_CELL} if out
+	 *            of room
+	 * @param pool
+	 *            pool to search free cells on or null to search serially,
+	 *            either way the same cells are found
+	 */
+	public static void place(GridModel grid, int count, int[] owners,
+			int[] preferredCells, int[] horizontalSizes, int[] verticalSizes,
+			int[] outCells, ForkJoinPool pool) {
+		for (int i = 0; i < count; ++i) {
+			final int owner = owners[i];
+			final int horizontalSize = horizontalSizes[i];
+			final int verticalSize = verticalSizes[i];
+			if (owner != GridModel.FREE) {
+				grid.release(owner);
+			}
+
+			int cell = preferredCells[i];
+			if ((cell == GridModel.NO_CELL)
+					|| !grid.isFree(grid.getColumn(cell), grid.getRow(cell),
+							horizontalSize, verticalSize, GridModel.FREE)) {
+				cell = pool != null ? ParallelFirstFit.findFreeCell(pool,
+						grid, horizontalSize, verticalSize, GridModel.FREE)
+						: grid.findFreeCell(horizontalSize, verticalSize,
+								GridModel.FREE);
+			}
+			outCells[i] = cell;
+			if (cell != GridModel.NO_CELL) {
+				grid.occupy(grid.getColumn(cell), grid.getRow(cell),
+						horizontalSize, verticalSize,
+						owner != GridModel.FREE ? owner : GridModel.BLOCKED);
+			}
+		}
+	}
+}
@@ -0,0 +1,354 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Authored by Anton Kuhlevskyi <anton.kuhleskiy@gmail.com>
+ */
+package org.androfarsh.widget;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.View.MeasureSpec;
+
+/**
+ * Counts objects allocated on the UI thread by drag MOVE events and by the
+ * frames drawn between them, and fails when they go over the budget checked
+ * in as {@value #BUDGET_FILE}. Besides fast swings the drag hovers slowly
+ * over a neighbour until it is reordered aside, then slowly backs off so it
+ * is reverted, which covers the long hover and revert paths too.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DragAllocationTest {
+	private static final String BUDGET_FILE = "alloc-budget.properties";
+
+	private static final String BUDGET_MOVE = "drag.move";
+
+	private static final String BUDGET_DRAW = "drag.draw";
+
+	private static final String BUDGET_REORDER = "drag.reorder";
+
+	private static final String BUDGET_REVERT = "drag.revert";
+
+	private static final int WIDTH = 1080;
+
+	private static final int HEIGHT = 1920;
+
+	private static final int CHILD_COUNT = 12;
+
+	private static final int WARM_UP_EVENTS = 128;
+
+	private static final int EVENTS = 512;
+
+	// long enough to cross a few cells back and forth, at least DELTA of the
+	// layout so the swing never counts as a hover
+	private static final int STEP = 7;
+
+	private static final int STEPS_PER_SWING = 64;
+
+	// below DELTA of the layout, these moves hover and revert
+	private static final int SLOW_STEP = 2;
+
+	// slow moves over the neighbour before the long hover fires
+	private static final int HOVER_EVENTS = 16;
+
+	private static final int WARM_UP_CYCLES = 1;
+
+	private static final int CYCLES = 4;
+
+	private final Properties mBudget = new Properties();
+
+	private DragGridLayout mLayout;
+
+	private Bitmap mBitmap;
+
+	private Canvas mCanvas;
+
+	private MotionEvent[] mEvents;
+
+	// the long hover is performed after these events, as if it timed out
+	private boolean[] mLongHovers;
+
+	// first event of the hover cycles
+	private int mHoverStart;
+
+	// first event of the measured hover cycles
+	private int mHoverMeasured;
+
+	private int mMoveAllocs;
+
+	private int mMoves;
+
+	private int mDrawAllocs;
+
+	private int mDraws;
+
+	private int mReorderAllocs;
+
+	private int mReordered;
+
+	private int mRevertAllocs;
+
+	private int mReverted;
+
+	@Before
+	public void setUp() throws IOException {
+		final InputStream in = InstrumentationRegistry.getContext()
+				.getAssets().open(BUDGET_FILE);
+		try {
+			mBudget.load(in);
+		} finally {
+			in.close();
+		}
+
+		InstrumentationRegistry.getInstrumentation().runOnMainSync(
+				new Runnable() {
+					@Override
+					public void run() {
+						setUpLayout();
+					}
+				});
+	}
+
+	@After
+	public void tearDown() {
+		InstrumentationRegistry.getInstrumentation().runOnMainSync(
+				new Runnable() {
+					@Override
+					public void run() {
+						mLayout.dispatchTouchEvent(mEvents[mEvents.length - 1]);
+						mLayout.setEditMode(false);
+						for (MotionEvent event : mEvents) {
+							event.recycle();
+						}
+						mBitmap.recycle();
+					}
+				});
+	}
+
+	@Test
+	public void dragStaysInAllocationBudget() {
+		InstrumentationRegistry.getInstrumentation().runOnMainSync(
+				new Runnable() {
+					@Override
+					public void run() {
+						drag();
+					}
+				});
+
+		// the paths the budgets are for have to be reached
+		assertTrue("no view was reordered by a long hover", mReordered > 0);
+		assertTrue("no reordered view was reverted", mReverted > 0);
+
+		assertBudget(BUDGET_MOVE, mMoveAllocs, mMoves, "events");
+		assertBudget(BUDGET_DRAW, mDrawAllocs, mDraws, "frames");
+		assertBudget(BUDGET_REORDER, mReorderAllocs, mReordered,
+				"reordered views");
+		assertBudget(BUDGET_REVERT, mRevertAllocs, mReverted,
+				"reverted views");
+	}
+
+	private void setUpLayout() {
+		mLayout = new DragGridLayout(
+				InstrumentationRegistry.getTargetContext());
+		for (int i = 0; i < CHILD_COUNT; ++i) {
+			final View child = new View(mLayout.getContext());
+			child.setId(i + 1);
+			child.setBackgroundColor(Color.GRAY);
+			final DragGridLayout.LayoutParams lp = new DragGridLayout.LayoutParams(
+					DragGridLayout.LayoutParams.MATCH_PARENT,
+					DragGridLayout.LayoutParams.MATCH_PARENT);
+			lp.mHorizontalSize = 1 + (i % 2);
+			lp.mVerticalSize = 1 + ((i / 2) % 2);
+			mLayout.addView(child, lp);
+		}
+		// the grid and the highlight are drawn on every frame of a drag
+		mLayout.setCellImage(new ColorDrawable(Color.LTGRAY));
+		mLayout.setHighlight(new ColorDrawable(Color.CYAN));
+		mBitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+		mCanvas = new Canvas(mBitmap);
+		mLayout.setEditMode(true);
+		frame();
+
+		final View child = mLayout.getChildAt(0);
+		final int x = child.getLeft() + (child.getWidth() / 2);
+		final int y = child.getTop() + (child.getHeight() / 2);
+		final View neighbour = mLayout.getChildAt(1);
+		final int hoverX = neighbour.getLeft() + (neighbour.getWidth() / 2);
+		final int hoverY = neighbour.getTop() + (neighbour.getHeight() / 2);
+
+		final List<int[]> moves = new ArrayList<int[]>();
+		int dx = 0;
+		for (int i = 1; i <= (WARM_UP_EVENTS + EVENTS); ++i) {
+			dx += ((i / STEPS_PER_SWING) % 2) == 0 ? STEP : -STEP;
+			moves.add(new int[] { x + dx, y + (dx / 2) });
+		}
+		addMoves(moves, x + dx, y + (dx / 2), x, y, STEP);
+
+		final List<Integer> longHovers = new ArrayList<Integer>();
+		mHoverStart = moves.size() + 1;
+		for (int cycle = 0; cycle < (WARM_UP_CYCLES + CYCLES); ++cycle) {
+			if (cycle == WARM_UP_CYCLES) {
+				mHoverMeasured = moves.size() + 1;
+			}
+			addMoves(moves, x, y, hoverX, hoverY, STEP);
+			for (int i = 0; i < HOVER_EVENTS; ++i) {
+				moves.add(new int[] { hoverX + (i % 2), hoverY });
+			}
+			longHovers.add(moves.size());
+			addMoves(moves, hoverX, hoverY, x, y, SLOW_STEP);
+		}
+
+		mEvents = new MotionEvent[moves.size() + 2];
+		mLongHovers = new boolean[mEvents.length];
+		for (Integer index : longHovers) {
+			mLongHovers[index] = true;
+		}
+		final long downTime = SystemClock.uptimeMillis();
+		mEvents[0] = MotionEvent.obtain(downTime, downTime,
+				MotionEvent.ACTION_DOWN, x, y, 0);
+		for (int i = 1; i < (mEvents.length - 1); ++i) {
+			final int[] move = moves.get(i - 1);
+			mEvents[i] = MotionEvent.obtain(downTime, downTime + (16 * i),
+					MotionEvent.ACTION_MOVE, move[0], move[1], 0);
+		}
+		mEvents[mEvents.length - 1] = MotionEvent.obtain(downTime, downTime
+				+ (16 * mEvents.length), MotionEvent.ACTION_UP, x, y, 0);
+	}
+
+	// moves by at most step along each axis until to is reached
+	private static void addMoves(List<int[]> moves, int fromX, int fromY,
+			int toX, int toY, int step) {
+		int x = fromX;
+		int y = fromY;
+		while ((x != toX) || (y != toY)) {
+			x += Math.max(-step, Math.min(step, toX - x));
+			y += Math.max(-step, Math.min(step, toY - y));
+			moves.add(new int[] { x, y });
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private void drag() {
+		mLayout.dispatchTouchEvent(mEvents[0]);
+		frame();
+		for (int i = 1; i <= WARM_UP_EVENTS; ++i) {
+			mLayout.dispatchTouchEvent(mEvents[i]);
+			frame();
+		}
+
+		// thread counters of ART tick only while counting is on
+		Debug.startAllocCounting();
+		try {
+			for (int i = WARM_UP_EVENTS + 1; i < mHoverStart; ++i) {
+				move(i);
+			}
+			for (int i = mHoverStart; i < mHoverMeasured; ++i) {
+				mLayout.dispatchTouchEvent(mEvents[i]);
+				if (mLongHovers[i] && mLayout.isLongHoverPending()) {
+					mLayout.performLongHover();
+				}
+				frame();
+			}
+			for (int i = mHoverMeasured; i < (mEvents.length - 1); ++i) {
+				move(i);
+				if (mLongHovers[i] && mLayout.isLongHoverPending()) {
+					longHover();
+				}
+			}
+		} finally {
+			Debug.stopAllocCounting();
+		}
+	}
+
+	// a move that reverts views is counted with its frame against the
+	// revert budget, the views are animated back from there
+	private void move(int index) {
+		final int displaced = mLayout.getDisplacedCount();
+		int allocs = Debug.getThreadAllocCount();
+		mLayout.dispatchTouchEvent(mEvents[index]);
+		final int moveAllocs = Debug.getThreadAllocCount() - allocs;
+
+		layout();
+
+		allocs = Debug.getThreadAllocCount();
+		mLayout.draw(mCanvas);
+		final int drawAllocs = Debug.getThreadAllocCount() - allocs;
+
+		final int reverted = displaced - mLayout.getDisplacedCount();
+		if (reverted > 0) {
+			mRevertAllocs += moveAllocs + drawAllocs;
+			mReverted += reverted;
+		} else {
+			mMoveAllocs += moveAllocs;
+			++mMoves;
+			mDrawAllocs += drawAllocs;
+			++mDraws;
+		}
+	}
+
+	// the long hover and the first frame of the reordered views
+	private void longHover() {
+		final int displaced = mLayout.getDisplacedCount();
+		int allocs = Debug.getThreadAllocCount();
+		mLayout.performLongHover();
+		int reorderAllocs = Debug.getThreadAllocCount() - allocs;
+
+		layout();
+
+		allocs = Debug.getThreadAllocCount();
+		mLayout.draw(mCanvas);
+		reorderAllocs += Debug.getThreadAllocCount() - allocs;
+
+		mReorderAllocs += reorderAllocs;
+		mReordered += mLayout.getDisplacedCount() - displaced;
+	}
+
+	private void frame() {
+		layout();
+		mLayout.draw(mCanvas);
+	}
+
+	private void layout() {
+		mLayout.measure(
+				MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+				MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.EXACTLY));
+		mLayout.layout(0, 0, WIDTH, HEIGHT);
+	}
+
+	private void assertBudget(String key, int allocs, int count, String what) {
+		final int budget = Integer.parseInt(mBudget.getProperty(key).trim());
+		assertTrue(key + ": " + allocs + " allocations for " + count + " "
+				+ what + ", budget is " + budget + " each",
+				allocs <= (budget * count));
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Authored by Anton Kuhlevskyi <anton.kuhleskiy@gmail.com>
+ */
+package org.androfarsh.widget;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.androfarsh.widget.DragGridLayout.Placement;
+
+/**
+ * Arrangement of widgets which can be changed from any thread, meant to be
+ * fed by background sync and shown by
+ * {@link DragGridLayout#setModel(ConcurrentGridModel, DragGridLayout.ViewFactory)}.
+ * <p>
+ * Mutations only update a map under a lock. Listener is notified once per
+ * burst, on the first mutation after the last {@link #publish()}, and
+ * publishing builds a single immutable {@link Snapshot} of everything
+ * changed meanwhile.
+ */
+public final class ConcurrentGridModel {
+	public interface OnChangeListener {
+		/**
+		 * Called on the mutating thread when the model gets changed after
+		 * the last {@link ConcurrentGridModel#publish()}.
+		 */
+		void onModelChanged(ConcurrentGridModel model);
+	}
+
+	/**
+	 * Immutable state of the model, placements are kept in the order they
+	 * were first put.
+	 */
+	public static final class Snapshot {
+		public final long version;
+		public final List<Placement> placements;
+
+		Snapshot(long version, List<Placement> placements) {
+			this.version = version;
+			this.placements = placements;
+		}
+	}
+
+	private final Object mLock = new Object();
+
+	private final Map<Integer, Placement> mPlacements = new LinkedHashMap<Integer, Placement>();
+
+	private long mVersion;
+
+	private boolean mDirty;
+
+	private Snapshot mSnapshot = new Snapshot(0,
+			Collections.<Placement> emptyList());
+
+	private volatile OnChangeListener mChangeListener;
+
+	public OnChangeListener getChangeListener() {
+		return mChangeListener;
+	}
+
+	public void setChangeListener(OnChangeListener listener) {
+		mChangeListener = listener;
+	}
+
+	/**
+	 * Adds the placement or replaces the one with the same id.
+	 */
+	public void put(Placement placement) {
+		final boolean notify;
+		synchronized (mLock) {
+			mPlacements.put(placement.id, placement);
+			notify = markDirty();
+		}
+		notifyChanged(notify);
+	}
+
+	/**
+	 * @return false if there is no placement with the given id
+	 */
+	public boolean move(int id, int column, int row) {
+		final boolean notify;
+		synchronized (mLock) {
+			final Placement placement = mPlacements.get(id);
+			if (placement == null) {
+				return false;
+			}
+			if ((placement.column == column) && (placement.row == row)) {
+				return true;
+			}
+			mPlacements.put(id, new Placement(id, column, row,
+					placement.horizontalSize, placement.verticalSize));
+			notify = markDirty();
+		}
+		notifyChanged(notify);
+		return true;
+	}
+
+	/**
+	 * @return false if there is no placement with the given id
+	 */
+	public boolean remove(int id) {
+		final boolean notify;
+		synchronized (mLock) {
+			if (mPlacements.remove(id) == null) {
+				return false;
+			}
+			notify = markDirty();
+		}
+		notifyChanged(notify);
+		return true;
+	}
+
+	public void clear() {
+		final boolean notify;
+		synchronized (mLock) {
+			if (mPlacements.isEmpty()) {
+				return;
+			}
+			mPlacements.clear();
+			notify = markDirty();
+		}
+		notifyChanged(notify);
+	}
+
+	/**
+	 * @return placement with the given id or null
+	 */
+	public Placement get(int id) {
+		synchronized (mLock) {
+			return mPlacements.get(id);
+		}
+	}
+
+	public int size() {
+		synchronized (mLock) {
+			return mPlacements.size();
+		}
+	}
+
+	/**
+	 * @return latest published snapshot
+	 */
+	public Snapshot getSnapshot() {
+		synchronized (mLock) {
+			return mSnapshot;
+		}
+	}
+
+	/**
+	 * Publishes mutations made since the last call, the next mutation
+	 * notifies the listener again.
+	 *
+	 * @return the new snapshot or the latest one if nothing changed
+	 */
+	public Snapshot publish() {
+		synchronized (mLock) {
+			if (mDirty) {
+				mDirty = false;
+				mSnapshot = new Snapshot(++mVersion,
+						Collections.unmodifiableList(new ArrayList<Placement>(
+								mPlacements.values())));
+			}
+			return mSnapshot;
+		}
+	}
+
+	// under mLock
+	private boolean markDirty() {
+		if (mDirty) {
+			return false;
+		}
+		mDirty = true;
+		return true;
+	}
+
+	private void notifyChanged(boolean notify) {
+		final OnChangeListener listener = mChangeListener;
+		if (notify && (listener != null)) {
+			listener.onModelChanged(this);
+		}
+	}
+}
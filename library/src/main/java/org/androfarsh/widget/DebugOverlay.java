@@ -0,0 +1,254 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Authored by Anton Kuhlevskyi <anton.kuhleskiy@gmail.com>
+ */
+package org.androfarsh.widget;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Paint.Style;
+import android.graphics.Typeface;
+import android.os.Debug;
+
+import org.androfarsh.grid.GridModel;
+
+/**
+ * Diagnostics overlay drawn by {@link DragGridLayout} in debug mode: frame
+ * times of the last frames, hover and reorder latency, allocations per
+ * frame, snapshot memory, snapshot cache size and per cell hover heat.
+ * <p>
+ * Everything it draws comes from preallocated buffers. Allocations are the
+ * ones of the UI thread between the frame start and {@link #onFrameEnd},
+ * the text is formatted after that reading and only drawn in
+ * {@link #draw}, so the overlay doesn't count itself.
+ */
+final class DebugOverlay {
+	private static final int FRAME_COUNT = 64;
+
+	private static final long FRAME_BUDGET_NANOS = 16666667L;
+
+	private static final int BAR_WIDTH = 4;
+
+	private static final int GRAPH_HEIGHT = 96;
+
+	private static final int TEXT_SIZE = 24;
+
+	private static final String[] LABELS = { "draw us ", "hover us ",
+		"reorder us ", "allocs ", "snapshot kb ", "cache kb " };
+
+	private final long[] mFrameNanos = new long[FRAME_COUNT];
+
+	private int mFrameIndex;
+
+	private long mLastFrameStart;
+
+	private long mDrawNanos;
+
+	private long mHoverNanos;
+
+	private long mReorderNanos;
+
+	private int mFrameStartAllocs;
+
+	private int mFrameAllocs;
+
+	private int[] mHeat = new int[0];
+
+	private int mHeatMax;
+
+	private final char[][] mLines = new char[LABELS.length][32];
+
+	private final int[] mLineLengths = new int[LABELS.length];
+
+	private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+	private boolean mAllocCounting;
+
+	DebugOverlay() {
+		mPaint.setTextSize(TEXT_SIZE);
+		mPaint.setTypeface(Typeface.MONOSPACE);
+	}
+
+	// the per thread counters of ART tick only while counting is on, only
+	// the UI thread ones are read
+	@SuppressWarnings("deprecation")
+	void start() {
+		if (!mAllocCounting) {
+			mAllocCounting = true;
+			Debug.startAllocCounting();
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	void stop() {
+		if (mAllocCounting) {
+			mAllocCounting = false;
+			Debug.stopAllocCounting();
+		}
+	}
+
+	void resizeHeat(int cellCount) {
+		if (mHeat.length != cellCount) {
+			mHeat = new int[cellCount];
+		} else {
+			for (int i = 0; i < cellCount; ++i) {
+				mHeat[i] = 0;
+			}
+		}
+		mHeatMax = 0;
+	}
+
+	void onPhase(int phase, long nanos) {
+		switch (phase) {
+		case DragGridLayout.OnPerformanceListener.PHASE_HOVER:
+			mHoverNanos = nanos;
+			break;
+		case DragGridLayout.OnPerformanceListener.PHASE_REORDER:
+			mReorderNanos = nanos;
+			break;
+		case DragGridLayout.OnPerformanceListener.PHASE_DRAW:
+			mDrawNanos = nanos;
+			break;
+		}
+	}
+
+	void onHover(GridModel grid, GridModel.Area area) {
+		if (area.isEmpty() || (mHeat.length != grid.getCellCount())) {
+			return;
+		}
+		for (int r = area.row; r < (area.row + area.verticalSize); ++r) {
+			for (int c = area.column; c < (area.column + area.horizontalSize); ++c) {
+				final int heat = ++mHeat[grid.indexOf(c, r)];
+				if (heat > mHeatMax) {
+					mHeatMax = heat;
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	void onFrameStart(long now) {
+		if (mLastFrameStart != 0) {
+			mFrameNanos[mFrameIndex] = now - mLastFrameStart;
+			mFrameIndex = (mFrameIndex + 1) % FRAME_COUNT;
+		}
+		mLastFrameStart = now;
+		mFrameStartAllocs = Debug.getThreadAllocCount();
+	}
+
+	/**
+	 * Called when the layout is done with the frame, before {@link #draw}.
+	 */
+	@SuppressWarnings("deprecation")
+	void onFrameEnd(long snapshotBytes, long cacheBytes) {
+		mFrameAllocs = Debug.getThreadAllocCount() - mFrameStartAllocs;
+
+		formatLine(0, mDrawNanos / 1000);
+		formatLine(1, mHoverNanos / 1000);
+		formatLine(2, mReorderNanos / 1000);
+		formatLine(3, mFrameAllocs);
+		formatLine(4, snapshotBytes / 1024);
+		formatLine(5, cacheBytes / 1024);
+	}
+
+	void draw(Canvas canvas, GridModel grid) {
+		drawHeat(canvas, grid);
+
+		final int left = grid.getLeft();
+		final int top = grid.getTop();
+
+		// frame graph, the line marks the 60 fps budget
+		mPaint.setStyle(Style.FILL);
+		mPaint.setColor(0x99000000);
+		canvas.drawRect(left, top, left + (FRAME_COUNT * BAR_WIDTH), top
+				+ GRAPH_HEIGHT + (TEXT_SIZE * 6), mPaint);
+		for (int i = 0; i < FRAME_COUNT; ++i) {
+			final long nanos = mFrameNanos[(mFrameIndex + i) % FRAME_COUNT];
+			final float height = Math.min(GRAPH_HEIGHT,
+					(nanos * GRAPH_HEIGHT) / (2 * FRAME_BUDGET_NANOS));
+			mPaint.setColor(nanos > FRAME_BUDGET_NANOS ? 0xffff4444
+					: 0xff44ff44);
+			canvas.drawRect(left + (i * BAR_WIDTH), (top + GRAPH_HEIGHT)
+					- height, (left + ((i + 1) * BAR_WIDTH)) - 1, top
+					+ GRAPH_HEIGHT, mPaint);
+		}
+		mPaint.setColor(0xffffff00);
+		canvas.drawLine(left, top + (GRAPH_HEIGHT / 2), left
+				+ (FRAME_COUNT * BAR_WIDTH), top + (GRAPH_HEIGHT / 2), mPaint);
+
+		mPaint.setColor(0xffffffff);
+		float y = top + GRAPH_HEIGHT + TEXT_SIZE;
+		for (int i = 0; i < mLines.length; ++i) {
+			canvas.drawText(mLines[i], 0, mLineLengths[i], left + 4, y, mPaint);
+			y += TEXT_SIZE;
+		}
+	}
+
+	private void drawHeat(Canvas canvas, GridModel grid) {
+		if ((mHeat.length != grid.getCellCount()) || grid.isEmpty()) {
+			return;
+		}
+
+		final int size = grid.getCellSize();
+		mPaint.setStyle(Style.FILL);
+		for (int i = 0; i < mHeat.length; ++i) {
+			final int l = grid.getCellLeft(grid.getColumn(i));
+			final int t = grid.getCellTop(grid.getRow(i));
+			if (grid.getOwner(i) != GridModel.FREE) {
+				mPaint.setColor(0x330000cc);
+				canvas.drawRect(l, t, l + size, t + size, mPaint);
+			}
+			if ((mHeatMax > 0) && (mHeat[i] > 0)) {
+				final int alpha = 0x20 + ((0x80 * mHeat[i]) / mHeatMax);
+				mPaint.setColor((alpha << 24) | 0xff6600);
+				canvas.drawRect(l, t, l + size, t + size, mPaint);
+			}
+		}
+	}
+
+	private void formatLine(int line, long value) {
+		final char[] text = mLines[line];
+		final String label = LABELS[line];
+		int length = 0;
+		for (int i = 0; (i < label.length()) && (length < text.length); ++i) {
+			text[length++] = label.charAt(i);
+		}
+		mLineLengths[line] = appendLong(text, value, length);
+	}
+
+	private static int appendLong(char[] text, long value, int offset) {
+		if (value < 0) {
+			if (offset < text.length) {
+				text[offset++] = '-';
+			}
+			value = -value;
+		}
+
+		final int start = offset;
+		do {
+			if (offset >= text.length) {
+				break;
+			}
+			text[offset++] = (char) ('0' + (value % 10));
+			value /= 10;
+		} while (value > 0);
+
+		for (int i = start, j = offset - 1; i < j; ++i, --j) {
+			final char c = text[i];
+			text[i] = text[j];
+			text[j] = c;
+		}
+		return offset;
+	}
+}
@@ -15,49 +15,60 @@
  */
 package org.androfarsh.widget;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import android.annotation.SuppressLint;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.Configuration;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Paint.Align;
-import android.graphics.Paint.Style;
-import android.graphics.Path;
+import android.graphics.Canvas.EdgeType;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.Region;
 import android.graphics.Region.Op;
-import android.graphics.Typeface;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
+import android.os.MessageQueue.IdleHandler;
+import android.os.SystemClock;
 import android.support.v4.view.GestureDetectorCompat;
 import android.util.AttributeSet;
-import android.util.Log;
+import android.util.LruCache;
+import android.util.SparseArray;
+import android.view.Choreographer;
+import android.view.GestureDetector.OnDoubleTapListener;
 import android.view.GestureDetector.OnGestureListener;
 import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 import android.view.animation.Animation;
 import android.view.animation.AnimationSet;
 import android.view.animation.ScaleAnimation;
 import android.view.animation.TranslateAnimation;
 import android.view.animation.Animation.AnimationListener;
 
+import org.androfarsh.grid.GridModel;
+
 public class DragGridLayout extends ViewGroup {
 	static class Cell {
 		public final static int LEFT = 1;
@@ -127,7 +138,8 @@ public class DragGridLayout extends ViewGroup {
 		}
 	}
 
-	private final class GestureListenerImpl implements OnGestureListener {
+	private final class GestureListenerImpl implements OnGestureListener,
+	OnDoubleTapListener {
 		OnGestureListener gestureListener;
 
 		@Override
@@ -138,10 +150,17 @@ public class DragGridLayout extends ViewGroup {
 		@Override
 		public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX,
 				float velocityY) {
-			Log.e(VIEW_LOG_TAG, "velocityX=" + velocityX + " velocityY="
-					+ velocityY);
+			mEventLog.log(GridEventLog.TYPE_FLING, velocityX, velocityY,
+					GridModel.NO_CELL, mDragNode != null ? mDragNode.view.getId()
+							: View.NO_ID);
+			if ((mDragGroup != null) || (mResizeView != null)) {
+				// groups are dropped and resizes are finished on up
+				return false;
+			}
 			if ((mDragNode != null) && (Math.abs(velocityY) > 1000)) {
-				final View view = mDragNode.view;
+				final Node node = mDragNode;
+				final View view = node.view;
+				finishDragSession(view);
 				final Animation animation = new TranslateAnimation(0, 0, 0,
 						(velocityY > 0 ? 1 : -1) * getMeasuredHeight());
 
@@ -151,10 +170,17 @@ public class DragGridLayout extends ViewGroup {
 				animation.setAnimationListener(new AbstractAnimationListener() {
 					@Override
 					public void onAnimationEnd(Animation animation) {
-						mDragNode = null;
+						// also fired by clearAnimation() of a view removed
+						// meanwhile, which cancelled the drag already
+						if (mDragNode == node) {
+							releaseSnapshot(node.viewDrawable);
+							mDragNode = null;
+						}
 
 						view.setAnimation(null);
-						removeView(view);
+						if (view.getParent() == DragGridLayout.this) {
+							removeView(view);
+						}
 					}
 				});
 
@@ -182,6 +208,30 @@ public class DragGridLayout extends ViewGroup {
 			}
 		}
 
+		// a press and hold in edit mode is a drag, so selection is toggled
+		// by a tap, which drops the view at the same cell first
+		@Override
+		public boolean onSingleTapConfirmed(MotionEvent e) {
+			if (mEditMode && (mDragGroup == null) && (mResizeView == null)) {
+				final View child = findIntersectChild(e.getX(), e.getY());
+				if (child != null) {
+					setChildSelected(child, !isChildSelected(child));
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public boolean onDoubleTap(MotionEvent e) {
+			return false;
+		}
+
+		@Override
+		public boolean onDoubleTapEvent(MotionEvent e) {
+			return false;
+		}
+
 		@Override
 		public boolean onScroll(MotionEvent e1, MotionEvent e2,
 				float distanceX, float distanceY) {
@@ -214,10 +264,16 @@ public class DragGridLayout extends ViewGroup {
 
 		@Override
 		public void onChildViewAdded(View parent, View child) {
-			// generates an id if it's missing
-			if (child.getId() == View.NO_ID) {
-				child.setId(child.hashCode());
+			// generates an id if it's missing or taken by another child
+			final View other = mChildrenById.get(child.getId());
+			if ((child.getId() == View.NO_ID)
+					|| ((other != null) && (other != child)
+					&& (other.getParent() == DragGridLayout.this) && (other
+					.getId() == child.getId()))) {
+				child.setId(View.generateViewId());
 			}
+			registerChildId(child);
+			mReorderGridStale = true;
 
 			if (child != mRootView) {
 				child.setOnLongClickListener(this);
@@ -229,15 +285,50 @@ public class DragGridLayout extends ViewGroup {
 
 		@Override
 		public void onChildViewRemoved(View parent, View child) {
+			if (mChildrenById.get(child.getId()) == child) {
+				mChildrenById.remove(child.getId());
+			}
+			if (child.getLayoutParams() instanceof LayoutParams) {
+				final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+				if (mChildrenById.get(lp.mRegisteredId) == child) {
+					mChildrenById.remove(lp.mRegisteredId);
+				}
+				lp.mRegisteredId = View.NO_ID;
+				lp.mSelected = false;
+			}
+			mSelectedChildren.remove(child);
+			if (isDragged(child)) {
+				if (!mDropDispatching) {
+					cancelDrag();
+				}
+			} else {
+				for (final Iterator<Node> it = mNodes.iterator(); it
+						.hasNext();) {
+					if (it.next().view == child) {
+						it.remove();
+					}
+				}
+			}
+			dropCachedSnapshot(child);
+			mReorderGridStale = true;
 			child.setOnLongClickListener(null);
 			child.setOnTouchListener(null);
 
+			if (mBatchRemovedViews != null) {
+				// notified once the whole batch is gone
+				mBatchRemovedViews.add(child);
+			} else {
+				notifyChildViewRemoved(child);
+			}
+		}
+
+		void notifyChildViewRemoved(View child) {
 			if ((mRemoveListener != null) && (child != mRootView)) {
 				mRemoveListener.onRemove(child, DragGridLayout.this);
 			}
 
 			if (listener != null) {
-				listener.onChildViewRemoved(parent, child);
+				listener.onChildViewRemoved(DragGridLayout.this, child);
 			}
 		}
 
@@ -251,6 +342,133 @@ public class DragGridLayout extends ViewGroup {
 		}
 	}
 
+	// takes the root and widget snapshots in idle time after edit mode is
+	// turned on, widgets closest to the last touch first, so neither the
+	// frame showing edit mode nor the first drag pays for software renders;
+	// due refreshes of the snapshots in use run in the same slots
+	private final class SnapshotScheduler implements IdleHandler,
+	Comparator<View> {
+		// ordered by ascending priority, the next view is the last one
+		private final List<View> queue = new ArrayList<View>();
+
+		private boolean idleHandlerAdded;
+
+		void start() {
+			stop();
+			final int count = getChildCount();
+			for (int i = 0; i < count; ++i) {
+				final View child = getChildAt(i);
+				if (child.getVisibility() == VISIBLE) {
+					queue.add(child);
+				}
+			}
+			Collections.sort(queue, this);
+			if (!queue.isEmpty()) {
+				mHandler.sendEmptyMessage(SNAPSHOT_MESSAGE);
+			}
+		}
+
+		void stop() {
+			queue.clear();
+			mHandler.removeMessages(SNAPSHOT_MESSAGE);
+			if (idleHandlerAdded) {
+				idleHandlerAdded = false;
+				Looper.myQueue().removeIdleHandler(this);
+			}
+		}
+
+		void schedule() {
+			if (!idleHandlerAdded) {
+				idleHandlerAdded = true;
+				Looper.myQueue().addIdleHandler(this);
+			}
+		}
+
+		@Override
+		public boolean queueIdle() {
+			idleHandlerAdded = false;
+			final long start = System.nanoTime();
+			final boolean refreshPending = !refreshSnapshots(start);
+			updateGridLayer();
+			while (!queue.isEmpty()
+					&& ((System.nanoTime() - start) <= SNAPSHOT_BUDGET_NANOS)) {
+				prewarmSnapshot(queue.remove(queue.size() - 1));
+			}
+			if (!queue.isEmpty() || refreshPending) {
+				mHandler.sendEmptyMessageDelayed(SNAPSHOT_MESSAGE,
+						SNAPSHOT_INTERVAL);
+			}
+			return false;
+		}
+
+		@Override
+		public int compare(View lhs, View rhs) {
+			if (lhs == rhs) {
+				return 0;
+			} else if (lhs == mRootView) {
+				return 1;
+			} else if (rhs == mRootView) {
+				return -1;
+			}
+			return Float.compare(distanceToLastDown(rhs),
+					distanceToLastDown(lhs));
+		}
+
+		private float distanceToLastDown(View view) {
+			final float dx = ((view.getLeft() + view.getRight()) / 2f)
+					- mLastDownX;
+			final float dy = ((view.getTop() + view.getBottom()) / 2f)
+					- mLastDownY;
+			return (dx * dx) + (dy * dy);
+		}
+	}
+
+	// idle snapshots kept for reuse keyed by child id, snapshots in use (the
+	// root view in edit mode, the dragged view) are taken out and put back
+	// when they are still clean
+	private final class SnapshotCache extends LruCache<Integer, BitmapDrawable>
+	implements ComponentCallbacks2 {
+		SnapshotCache(int maxBytes) {
+			super(maxBytes);
+		}
+
+		@Override
+		protected int sizeOf(Integer key, BitmapDrawable value) {
+			return value.getBitmap().getByteCount();
+		}
+
+		@Override
+		protected void entryRemoved(boolean evicted, Integer key,
+				BitmapDrawable oldValue, BitmapDrawable newValue) {
+			// removed entries are handed out to the caller
+			if (evicted || ((newValue != null) && (newValue != oldValue))) {
+				releaseSnapshot(oldValue);
+			}
+			if (GridTrace.ENABLED) {
+				GridTrace.setCounter(GridTrace.COUNTER_SNAPSHOT_CACHE_BYTES,
+						size());
+			}
+		}
+
+		@Override
+		public void onTrimMemory(int level) {
+			if (level >= TRIM_MEMORY_UI_HIDDEN) {
+				evictAll();
+			} else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+				trimToSize(maxSize() / 2);
+			}
+		}
+
+		@Override
+		public void onLowMemory() {
+			evictAll();
+		}
+
+		@Override
+		public void onConfigurationChanged(Configuration newConfig) {
+		}
+	}
+
 	public static class LayoutParams extends MarginLayoutParams {
 		int mX = UNKNOWN;
 		int mY = UNKNOWN;
@@ -258,6 +476,30 @@ public class DragGridLayout extends ViewGroup {
 		int mVerticalSize = 1;
 		int mHorizontalSize = 1;
 
+		int mSnapshotRefresh = SNAPSHOT_REFRESH_FROZEN;
+
+		// inputs of the last span based measure, used to skip child.measure()
+		int mMeasuredCellSize = UNKNOWN;
+		int mMeasuredVerticalSize;
+		int mMeasuredHorizontalSize;
+		int mMeasuredHorizontalMargins;
+		int mMeasuredVerticalMargins;
+		int mMeasuredParentWidthSpec;
+		int mMeasuredParentHeightSpec;
+		int mMeasuredHorizontalPadding;
+		int mMeasuredVerticalPadding;
+
+		// measured since the last layout, so it must be laid out even if its
+		// bounds stay the same
+		boolean mMeasuredSinceLayout;
+
+		// mirrors membership in mSelectedChildren for per frame checks
+		boolean mSelected;
+
+		// key of the child in mChildrenById, differs from the view id after
+		// setId() until the child is registered again
+		int mRegisteredId = View.NO_ID;
+
 		public LayoutParams() {
 			super(MATCH_PARENT, MATCH_PARENT);
 		}
@@ -269,6 +511,9 @@ public class DragGridLayout extends ViewGroup {
 
 			mVerticalSize = a.getInt(R.styleable.DragGridLayout_vertical_size, 1);
 			mHorizontalSize = a.getInt(R.styleable.DragGridLayout_horizontal_size, 1);
+			mSnapshotRefresh = a.getInt(
+					R.styleable.DragGridLayout_snapshot_refresh,
+					SNAPSHOT_REFRESH_FROZEN);
 
 			a.recycle();
 		}
@@ -291,6 +536,9 @@ public class DragGridLayout extends ViewGroup {
 			mY = source.mY;
 			mVerticalSize = source.mVerticalSize;
 			mHorizontalSize = source.mHorizontalSize;
+			mSnapshotRefresh = source.mSnapshotRefresh;
+			mSelected = source.mSelected;
+			mRegisteredId = source.mRegisteredId;
 		}
 
 		public LayoutParams(MarginLayoutParams source) {
@@ -334,7 +582,52 @@ public class DragGridLayout extends ViewGroup {
 		public int getVerticalSize() {
 			return mHorizontalSize;
 		}
+
+		/**
+		 * @param snapshotRefresh
+		 *            {@link #SNAPSHOT_REFRESH_FROZEN},
+		 *            {@link #SNAPSHOT_REFRESH_LIVE} or the minimal interval in
+		 *            ms between snapshot refreshes
+		 */
+		public LayoutParams setSnapshotRefresh(int snapshotRefresh) {
+			mSnapshotRefresh = snapshotRefresh;
+			return this;
+		}
+
+		public int getSnapshotRefresh() {
+			return mSnapshotRefresh;
+		}
 		
+		boolean isMeasureCached(int cellSize, int parentWidthSpec,
+				int parentHeightSpec, int horizontalPadding, int verticalPadding) {
+			return (mMeasuredCellSize == cellSize)
+					&& (mMeasuredHorizontalSize == mHorizontalSize)
+					&& (mMeasuredVerticalSize == mVerticalSize)
+					&& (mMeasuredHorizontalMargins == (leftMargin + rightMargin))
+					&& (mMeasuredVerticalMargins == (topMargin + bottomMargin))
+					&& (mMeasuredParentWidthSpec == parentWidthSpec)
+					&& (mMeasuredParentHeightSpec == parentHeightSpec)
+					&& (mMeasuredHorizontalPadding == horizontalPadding)
+					&& (mMeasuredVerticalPadding == verticalPadding);
+		}
+
+		void setMeasureCached(int cellSize, int parentWidthSpec,
+				int parentHeightSpec, int horizontalPadding, int verticalPadding) {
+			mMeasuredCellSize = cellSize;
+			mMeasuredHorizontalSize = mHorizontalSize;
+			mMeasuredVerticalSize = mVerticalSize;
+			mMeasuredHorizontalMargins = leftMargin + rightMargin;
+			mMeasuredVerticalMargins = topMargin + bottomMargin;
+			mMeasuredParentWidthSpec = parentWidthSpec;
+			mMeasuredParentHeightSpec = parentHeightSpec;
+			mMeasuredHorizontalPadding = horizontalPadding;
+			mMeasuredVerticalPadding = verticalPadding;
+		}
+
+		void invalidateMeasureCache() {
+			mMeasuredCellSize = UNKNOWN;
+		}
+
 		@Override
 		public String toString() {
 			return String.format(Locale.ENGLISH,
@@ -357,28 +650,68 @@ public class DragGridLayout extends ViewGroup {
 		Rect currentRect = new Rect();
 		View view;
 
+		// owner of the view in the reorder occupancy
+		int owner;
+
 		BitmapDrawable viewDrawable;
 
-		Node(View view, Rect rect) {
+		Node(View view, Rect rect, BitmapDrawable viewDrawable) {
 			this.view = view;
-			this.viewDrawable = DragGridLayout.createDrawingCache(view);
+			this.viewDrawable = viewDrawable;
 
 			startRect.set(rect);
 			currentRect.set(rect);
 		}
 
-		public void dispose() {
-			if (viewDrawable != null) {
-				viewDrawable.getBitmap().recycle();
-				viewDrawable = null;
-			}
-		}
-
 		@Override
 		public int hashCode() {
 			return view.hashCode();
 		}
 	}
+
+	/**
+	 * Selected children dragged together as one rigid block.
+	 */
+	static class Group {
+		// the view the drag started on
+		final View view;
+
+		final View[] views;
+
+		// cell offsets of the views from the left-top cell of the group
+		final int[] columns;
+		final int[] rows;
+		final int[] horizontalSizes;
+		final int[] verticalSizes;
+
+		int horizontalSize;
+		int verticalSize;
+
+		// bounds of the group cells at drag start and while dragged
+		final Rect startRect = new Rect();
+		final Rect currentRect = new Rect();
+
+		// every view drawn into one layer
+		BitmapDrawable drawable;
+
+		Group(View view, int capacity) {
+			this.view = view;
+			views = new View[capacity];
+			columns = new int[capacity];
+			rows = new int[capacity];
+			horizontalSizes = new int[capacity];
+			verticalSizes = new int[capacity];
+		}
+
+		boolean contains(View child) {
+			for (int i = 0; i < views.length; ++i) {
+				if (views[i] == child) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
 	
 	static abstract class AbstractAnimationListener implements AnimationListener {
 
@@ -405,15 +738,132 @@ public class DragGridLayout extends ViewGroup {
 		void onRemove(View view, DragGridLayout parent);
 	}
 
+	/**
+	 * Receives the new spans of a child resized by its handle once the
+	 * resize is over, not called when the spans end up unchanged.
+	 */
+	public interface OnViewResizeListener {
+		void onResize(View view, int horizontalSize, int verticalSize,
+				DragGridLayout parent);
+	}
+
+	/**
+	 * Receives the time spent in the main phases of the layout, see
+	 * {@link DragGridMetrics} for an aggregating implementation.
+	 */
+	public interface OnPerformanceListener {
+		int PHASE_HOVER = 0;
+		int PHASE_REORDER = 1;
+		int PHASE_DROP = 2;
+		int PHASE_MEASURE = 3;
+		int PHASE_LAYOUT = 4;
+		int PHASE_DRAW = 5;
+		int PHASE_RESOLVE_GRID = 6;
+		int PHASE_OCCUPANCY = 7;
+		int PHASE_SNAPSHOT = 8;
+
+		int PHASE_COUNT = 9;
+
+		void onPhase(int phase, long nanos);
+	}
+
+	/**
+	 * Creates the views of placements submitted through
+	 * {@link DragGridLayout#submitLayout(List, ViewFactory)} which have no
+	 * child yet.
+	 */
+	public interface ViewFactory {
+		View createView(Placement placement, DragGridLayout parent);
+	}
+
+	/**
+	 * Position and spans, in cells, of the child with the given id.
+	 */
+	public static final class Placement {
+		public final int id;
+		public final int column;
+		public final int row;
+		public final int horizontalSize;
+		public final int verticalSize;
+
+		public Placement(int id, int column, int row, int horizontalSize,
+				int verticalSize) {
+			this.id = id;
+			this.column = column;
+			this.row = row;
+			this.horizontalSize = horizontalSize;
+			this.verticalSize = verticalSize;
+		}
+	}
+
+	/**
+	 * Receives smoothness statistics of a drag session when the dragged view
+	 * is dropped or flung away.
+	 */
+	public interface OnDragStatsListener {
+		void onDragStats(View view, DragSessionStats stats,
+				DragGridLayout parent);
+	}
+
+	/** Widget snapshots are taken at the drag scale instead of full size. */
+	public static final int SNAPSHOT_DOWNSCALE = 1;
+
+	/** Opaque views are snapshotted into RGB_565 bitmaps. */
+	public static final int SNAPSHOT_OPAQUE_RGB_565 = 2;
+
+	/**
+	 * Snapshots are moved to hardware bitmaps when the layout is hardware
+	 * accelerated (API 26+).
+	 */
+	public static final int SNAPSHOT_HARDWARE = 4;
+
+	public static final int DEFAULT_SNAPSHOT_FLAGS = SNAPSHOT_DOWNSCALE
+			| SNAPSHOT_OPAQUE_RGB_565 | SNAPSHOT_HARDWARE;
+
+	/**
+	 * The snapshot shown in place of the child isn't updated, see
+	 * {@link LayoutParams#setSnapshotRefresh(int)}. Positive values refresh
+	 * it at most every that many ms after the child invalidates.
+	 */
+	public static final int SNAPSHOT_REFRESH_FROZEN = -1;
+
+	/** The child is drawn live instead of its snapshot. */
+	public static final int SNAPSHOT_REFRESH_LIVE = 0;
+
+	/** Widgets under a long hovered area move to the first free cells. */
+	public static final int DROP_MODE_REORDER = 0;
+
+	/**
+	 * A widget which alone covers the long hovered area and has the span of
+	 * the dragged one takes its place, the others are reordered.
+	 */
+	public static final int DROP_MODE_SWAP = 1;
+
 	private static final int LONGPRESS_MESSAGE = 1;
 
 	private static final int LONGHOVER_MESSAGE = 2;
 
+	private static final int SNAPSHOT_MESSAGE = 3;
+
+	// time spent on span steps of a resize per frame, the rest of the steps
+	// continue on the next frame
+	private static final long RESIZE_BUDGET_NANOS = 8000000L;
+
+	// idle time spent on snapshots per frame, one snapshot is always taken
+	private static final long SNAPSHOT_BUDGET_NANOS = 4000000L;
+
+	private static final int SNAPSHOT_INTERVAL = 16;
+
+	// share of the app heap (memory class) the snapshot cache may hold
+	private static final int SNAPSHOT_CACHE_HEAP_DIVIDER = 16;
+
 	private static final int LONGPRESS_TIMEOUT = ViewConfiguration
 			.getLongPressTimeout();
 
 	private static final int TAP_TIMEOUT = ViewConfiguration.getTapTimeout();
 
+	static final int LONGHOVER_TIMEOUT = LONGPRESS_TIMEOUT + TAP_TIMEOUT;
+
 	private static final int UNKNOWN = -1;
 
 	private static final int DELTA = 5;
@@ -426,24 +876,63 @@ public class DragGridLayout extends ViewGroup {
 
 	private static final float SCALE_FACTOR = 0.8f;
 
+	// state sets are shared so that drawing doesn't allocate per frame,
+	// indexed by (editing ? 1 : 0) | (pressed ? 2 : 0)
+	private static final int[][] CELL_STATE_SETS = new int[][] {
+			{ -R.attr.state_editing, -android.R.attr.state_pressed },
+			{ R.attr.state_editing, -android.R.attr.state_pressed },
+			{ -R.attr.state_editing, android.R.attr.state_pressed },
+			{ R.attr.state_editing, android.R.attr.state_pressed } };
+
+	private static final int[] DROP_ALLOW_STATE_SET = new int[] { R.attr.state_drop_allow };
+
+	private static final int[] DROP_DENY_STATE_SET = new int[] { -R.attr.state_drop_allow };
+
+	private static final int[] SELECTED_STATE_SET = new int[] { android.R.attr.state_selected };
+
 	@SuppressWarnings("deprecation")
-	private static BitmapDrawable createDrawingCache(View view) {
-		BitmapDrawable drawable = null;
-		view.buildDrawingCache();
-		final Bitmap bitmap = view.getDrawingCache();
-		if (bitmap != null) {
-			drawable = new BitmapDrawable(Bitmap.createBitmap(bitmap));
-			bitmap.recycle();
-		}
-		view.destroyDrawingCache();
-		return drawable;
+	private static BitmapDrawable createDrawingCache(View view, Canvas canvas,
+			int width, int height, Bitmap.Config config, boolean hardware) {
+		if ((width <= 0) || (height <= 0)) {
+			return null;
+		}
+
+		Bitmap bitmap = Bitmap.createBitmap(width, height, config);
+		drawSnapshot(view, canvas, bitmap);
+
+		if (hardware && (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)) {
+			final Bitmap hardwareBitmap = bitmap.copy(Bitmap.Config.HARDWARE,
+					false);
+			if (hardwareBitmap != null) {
+				bitmap.recycle();
+				bitmap = hardwareBitmap;
+			}
+		}
+		return new BitmapDrawable(bitmap);
+	}
+
+	private static void drawSnapshot(View view, Canvas canvas, Bitmap bitmap) {
+		canvas.setBitmap(bitmap);
+		canvas.save();
+		canvas.scale((float) bitmap.getWidth() / view.getWidth(),
+				(float) bitmap.getHeight() / view.getHeight());
+		canvas.translate(-view.getScrollX(), -view.getScrollY());
+		view.draw(canvas);
+		canvas.restore();
+		canvas.setBitmap(null);
 	}
 
 	private boolean mEditMode;
 
 	private View mRootView;
 
-	private final Set<Cell> mHoveredCells = new HashSet<Cell>();
+	private final GridModel mGrid = new GridModel();
+
+	private final GridModel.Area mHoveredArea = new GridModel.Area();
+
+	private boolean mHoverComplete;
+
+	private int[] mTmpOwners = new int[0];
 
 	private final List<Cell> mCells = new ArrayList<Cell>();
 
@@ -453,10 +942,6 @@ public class DragGridLayout extends ViewGroup {
 
 	private GestureDetectorCompat mGestureDetector;
 
-	private final Region mCellsRegion = new Region();
-
-	private final Region mFreeCellsRegion = new Region();
-
 	private final Region mTmpRegion = new Region();
 
 	private final Rect mTmpRect = new Rect();
@@ -475,6 +960,24 @@ public class DragGridLayout extends ViewGroup {
 
 	private float mScaleFactor = SCALE_FACTOR;
 
+	private int mSnapshotFlags = DEFAULT_SNAPSHOT_FLAGS;
+
+	private int mDropMode = DROP_MODE_REORDER;
+
+	// cell grid composed once in edit mode, so drag frames draw a single
+	// bitmap instead of the root and every cell. With a frozen root the grid
+	// is drawn into the root view snapshot, the layer has a bitmap of its
+	// own only when there is none. The pressed cell is drawn over it, so a
+	// press never composes it again
+	private BitmapDrawable mGridLayerDrawable;
+
+	// root view snapshot the grid was drawn into, it stays referenced while
+	// the snapshot is cached, so the grid is redrawn over a fresh root when
+	// the snapshot comes back
+	private BitmapDrawable mGridRootDrawable;
+
+	private boolean mGridLayerDirty = true;
+
 	private boolean mDebugMode;
 
 	private HierarchyChangeListenerImpl mHierarchyChangeListener;
@@ -482,20 +985,20 @@ public class DragGridLayout extends ViewGroup {
 
 	private OnCellClickListener mCellClickListener;
 
-	private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-
 	@SuppressLint("HandlerLeak")
 	private final Handler mHandler = new Handler() {
 		@Override
 		public void handleMessage(Message msg) {
 			switch (msg.what) {
 			case LONGHOVER_MESSAGE:
-				requestReorder();
-				mLoongHoveredRequested = false;
+				performLongHover();
 				break;
 			case LONGPRESS_MESSAGE:
 				// TODO
 				break;
+			case SNAPSHOT_MESSAGE:
+				mSnapshotScheduler.schedule();
+				break;
 			}
 			super.handleMessage(msg);
 		}
@@ -511,13 +1014,188 @@ public class DragGridLayout extends ViewGroup {
 
 	private OnViewRemoveListener mRemoveListener;
 
+	private OnViewResizeListener mResizeListener;
+
+	// drawn at the right-bottom corner of children in edit mode, null turns
+	// resizing off
+	private Drawable mResizeHandleDrawable;
+
+	// child resized by its handle
+	private View mResizeView;
+
+	private int mResizeOwner;
+
+	private int mResizeColumn;
+
+	private int mResizeRow;
+
+	// applied spans and the spans under the finger
+	private int mResizeHorizontalSize;
+
+	private int mResizeVerticalSize;
+
+	private int mResizeTargetHorizontalSize;
+
+	private int mResizeTargetVerticalSize;
+
+	private int mResizeStartHorizontalSize;
+
+	private int mResizeStartVerticalSize;
+
+	// new cells of the widgets in the way of a span step
+	private int[] mResizeCells = new int[0];
+
+	// occupancy before the running span step, restored when the widgets in
+	// the way don't fit anywhere
+	private final GridModel mResizeStepGrid = new GridModel();
+
+	private boolean mResizeStepsPosted;
+
+	private final Runnable mResizeStepsRunnable = new Runnable() {
+		@Override
+		public void run() {
+			mResizeStepsPosted = false;
+			requestResizeSteps(RESIZE_BUDGET_NANOS);
+		}
+	};
+
 	private boolean mLoongHoveredRequested;
 
 	private int mCellCount = DEFAULT_CELL_COUNT;
 
 	private int mGravity = DEFAULT_GRAVITY;
 
-	private final Set<Node> mNodes = new HashSet<Node>();
+	// a list, so the revert on every slow move walks it without an iterator
+	private final List<Node> mNodes = new ArrayList<Node>();
+
+	// selected in edit mode, dragging one of them drags them all
+	private final List<View> mSelectedChildren = new ArrayList<View>();
+
+	private Group mDragGroup;
+
+	// the whole group fits at the hovered area
+	private boolean mGroupDropAllowed;
+
+	// occupancy without the dragged view taken at drag start, tentative
+	// moves of mNodes are applied to it as diffs
+	private final GridModel mReorderGrid = new GridModel();
+
+	// children changed during the drag, the reorder occupancy is retaken
+	private boolean mReorderGridStale;
+
+	private int mDrawnChildCount;
+
+	private int mCulledChildCount;
+
+	private OnPerformanceListener mPerformanceListener;
+
+	private DebugOverlay mDebugOverlay;
+
+	private long mSnapshotBytes;
+
+	private final GridEventLog mEventLog = new GridEventLog();
+
+	private GestureRecorder mGestureRecorder;
+
+	private OnDragStatsListener mDragStatsListener;
+
+	private DragSessionStats mDragStats;
+
+	private boolean mDragSessionActive;
+
+	private long mPendingTouchNanos;
+
+	private final SnapshotScheduler mSnapshotScheduler = new SnapshotScheduler();
+
+	private SnapshotCache mSnapshotCache;
+
+	private boolean mRootSnapshotDirty;
+
+	private boolean mDragSnapshotDirty;
+
+	private boolean mLayoutInProgress;
+
+	// uptime of the pending refresh of the snapshot in use, 0 if none
+	private long mRootRefreshTime;
+
+	private long mDragRefreshTime;
+
+	// uptime of the last capture of the snapshot in use
+	private long mRootSnapshotTime;
+
+	private long mDragSnapshotTime;
+
+	// snapshots are drawn through one canvas, refreshes reuse their bitmap
+	private final Canvas mSnapshotCanvas = new Canvas();
+
+	// submitted before the grid was resolved
+	private List<Placement> mPendingPlacements;
+
+	private ViewFactory mPendingViewFactory;
+
+	private final SparseArray<View> mChildrenById = new SparseArray<View>();
+
+	// views removed by the running removeViews() call
+	private List<View> mBatchRemovedViews;
+
+	// set while OnViewDragListener.onDrop() runs, a removal of the dropped view
+	// from there cancels the drag once it returns
+	private boolean mDropDispatching;
+
+	private PlacementSolver mPlacementSolver;
+
+	// plans solved for older generations are dropped
+	private int mPlacementGeneration;
+
+	private int mReorderGeneration;
+
+	private final PlacementSolver.Callback mPlacementCallback = new PlacementSolver.Callback() {
+		@Override
+		public void onSolved(PlacementSolver.Plan plan) {
+			if (plan.generation == mPlacementGeneration) {
+				applyPlacement(plan);
+			}
+		}
+	};
+
+	private final PlacementSolver.Callback mReorderCallback = new PlacementSolver.Callback() {
+		@Override
+		public void onSolved(PlacementSolver.Plan plan) {
+			if ((plan.generation == mReorderGeneration)
+					&& ((mDragNode != null) || (mDragGroup != null))) {
+				applyReorder(plan);
+			}
+		}
+	};
+
+	private ConcurrentGridModel mModel;
+
+	private ViewFactory mModelViewFactory;
+
+	// version of the last applied model snapshot
+	private long mModelVersion;
+
+	// views are created on the UI thread, its choreographer is thread safe to post to
+	private final Choreographer mChoreographer = Choreographer.getInstance();
+
+	private final Choreographer.FrameCallback mModelFrameCallback = new Choreographer.FrameCallback() {
+		@Override
+		public void doFrame(long frameTimeNanos) {
+			applyModel();
+		}
+	};
+
+	// called on the mutating thread once per burst of model changes
+	private final ConcurrentGridModel.OnChangeListener mModelChangeListener = new ConcurrentGridModel.OnChangeListener() {
+		@Override
+		public void onModelChanged(ConcurrentGridModel model) {
+			mChoreographer.postFrameCallback(mModelFrameCallback);
+		}
+	};
+
+	private float mLastDownX;
+
+	private float mLastDownY;
 
 	public DragGridLayout(Context context) {
 		super(context);
@@ -537,13 +1215,18 @@ public class DragGridLayout extends ViewGroup {
 
 		mDebugMode = a.getBoolean(R.styleable.DragGridLayout_debug_mode,
 				mDebugMode);
+		updateDebugOverlay();
 		mCellDrawable = a.getDrawable(R.styleable.DragGridLayout_cell_drawable);
 		mHighlightDrawable = a
 				.getDrawable(R.styleable.DragGridLayout_highlight_drawable);
+		mResizeHandleDrawable = a
+				.getDrawable(R.styleable.DragGridLayout_resize_handle_drawable);
 		setCellCount(a.getInteger(R.styleable.DragGridLayout_cell_count,
 				DEFAULT_CELL_COUNT));
 		mGravity = a.getInteger(R.styleable.DragGridLayout_android_gravity,
 				DEFAULT_GRAVITY);
+		mDropMode = a.getInt(R.styleable.DragGridLayout_drop_mode,
+				DROP_MODE_REORDER);
 
 		final int rootViewRes = a.getResourceId(
 				R.styleable.DragGridLayout_root_layout, UNKNOWN);
@@ -594,71 +1277,225 @@ public class DragGridLayout extends ViewGroup {
 
 	@Override
 	protected void dispatchDraw(Canvas canvas) {
-		if (mDebugMode) {
-			mPaint.setStyle(Style.FILL_AND_STROKE);
-			final Path path = new Path();
-
-			path.reset();
-			mCellsRegion.getBoundaryPath(path);
-			path.close();
-			mPaint.setColor(0x660000cc);
-			canvas.drawPath(path, mPaint);
-
-			path.reset();
-			mFreeCellsRegion.getBoundaryPath(path);
-			path.close();
-			mPaint.setColor(0x66cc0000);
-			canvas.drawPath(path, mPaint);
+		final long start = startPhase();
+		if (mDebugOverlay != null) {
+			mDebugOverlay.onFrameStart(start);
 		}
 
-		if (mRootView == null) {
+		mDrawnChildCount = 0;
+		mCulledChildCount = 0;
+
+		if ((mRootView == null) && !drawGridLayer(canvas)) {
 			drawCellGrid(canvas);
 		}
 		super.dispatchDraw(canvas);
-	}
-
-	private void drawCellGrid(Canvas canvas) {
-		if (mCellDrawable != null) {
-			int i = 0;
-			for (final Cell cell : mCells) {
-				mTmpRect.set(cell.rect);
-
-				final int[] stateSet = new int[] {
-						(mEditMode ? 1 : -1) * R.attr.state_editing,
-						(mPressedCell == cell ? 1 : -1)
-						* android.R.attr.state_pressed };
-
-				canvas.save();
-				canvas.clipRect(cell.rect);
-				mCellDrawable.setState(stateSet);
-				mCellDrawable.setBounds(cell.rect);
-				mCellDrawable.draw(canvas);
-
-				if (mDebugMode) {
-					mPaint.setTextAlign(Align.CENTER);
-					mPaint.setTextSize(30);
-					mPaint.setTypeface(Typeface.DEFAULT_BOLD);
-					mPaint.setColor(Color.GREEN);
-					canvas.drawText(Integer.toString(i), cell.rect.centerX(),
-							cell.rect.centerY(), mPaint);
-					++i;
-				}
-
-				canvas.restore();
-			}
+		if (mDragGroup != null) {
+			drawGroup(canvas);
 		}
+		endPhase(OnPerformanceListener.PHASE_DRAW, start);
 
-		if (mDebugMode) {
-			mPaint.setColor(Color.GREEN);
-			mPaint.setStyle(Style.STROKE);
-			mPaint.setStrokeWidth(1.5f);
-			canvas.drawPath(mCellsRegion.getBoundaryPath(), mPaint);
+		if (mDebugOverlay != null) {
+			mDebugOverlay.onFrameEnd(mSnapshotBytes, mSnapshotCache.size());
+			mDebugOverlay.draw(canvas, mGrid);
+		}
+		if (mDragSessionActive) {
+			onDragSessionFrame();
 		}
 	}
 
+	@Override
+	public boolean dispatchTouchEvent(MotionEvent ev) {
+		if (mGestureRecorder != null) {
+			mGestureRecorder.record(ev);
+		}
+		if (ev.getActionMasked() == MotionEvent.ACTION_DOWN) {
+			mLastDownX = ev.getX();
+			mLastDownY = ev.getY();
+		}
+		return super.dispatchTouchEvent(ev);
+	}
+
+	private void invalidateGridLayer() {
+		mGridLayerDirty = true;
+		invalidate();
+	}
+
+	/**
+	 * Composes the cell grid into the grid layer if the grid or the root view
+	 * snapshot changed. The layer is kept in edit mode only and waits for
+	 * the root view snapshot when there is a root view.
+	 */
+	private void updateGridLayer() {
+		final boolean rootLive = (mRootView != null)
+				&& isSnapshotLive(mRootView);
+		if (!mGridLayerDirty || !mEditMode
+				|| ((mRootView != null) && !rootLive && (mRootViewDrawable == null))) {
+			return;
+		}
+		final int width = getWidth();
+		final int height = getHeight();
+		if ((width <= 0) || (height <= 0)) {
+			return;
+		}
+
+		final Bitmap bitmap;
+		if ((mRootView != null) && !rootLive) {
+			releaseSnapshot(mGridLayerDrawable);
+			mGridLayerDrawable = null;
+			bitmap = mRootViewDrawable.getBitmap();
+			requestCurrentRect(mTmpRect, mRootView);
+			if (!bitmap.isMutable() || (bitmap.getWidth() != mTmpRect.width())
+					|| (bitmap.getHeight() != mTmpRect.height())
+					|| !mTmpRect.contains(mGrid.getLeft(), mGrid.getTop(),
+							mGrid.getCellLeft(mGrid.getColumns()),
+							mGrid.getCellTop(mGrid.getRows()))) {
+				// scaled, hardware or smaller than the grid, cells are drawn
+				// over it one by one
+				if ((mGridRootDrawable == mRootViewDrawable)
+						&& bitmap.isMutable()) {
+					bitmap.eraseColor(0);
+					drawSnapshot(mRootView, mSnapshotCanvas, bitmap);
+				}
+				mGridRootDrawable = null;
+				mGridLayerDirty = false;
+				return;
+			}
+			if (mGridRootDrawable == mRootViewDrawable) {
+				// the grid of the last composition is in there
+				bitmap.eraseColor(0);
+				drawSnapshot(mRootView, mSnapshotCanvas, bitmap);
+			}
+			mGridRootDrawable = mRootViewDrawable;
+		} else {
+			Bitmap layer = mGridLayerDrawable != null ? mGridLayerDrawable
+					.getBitmap() : null;
+			if ((layer == null) || (layer.getWidth() != width)
+					|| (layer.getHeight() != height)) {
+				releaseSnapshot(mGridLayerDrawable);
+				layer = Bitmap.createBitmap(width, height,
+						Bitmap.Config.ARGB_8888);
+				mGridLayerDrawable = new BitmapDrawable(getResources(), layer);
+				mSnapshotBytes += layer.getByteCount();
+			} else {
+				layer.eraseColor(0);
+			}
+			bitmap = layer;
+			mTmpRect.setEmpty();
+		}
+
+		mSnapshotCanvas.setBitmap(bitmap);
+		mSnapshotCanvas.save();
+		mSnapshotCanvas.translate(-mTmpRect.left, -mTmpRect.top);
+		drawCellGrid(mSnapshotCanvas, null);
+		mSnapshotCanvas.restore();
+		mSnapshotCanvas.setBitmap(null);
+		mGridLayerDirty = false;
+	}
+
+	private boolean drawGridLayer(Canvas canvas) {
+		updateGridLayer();
+		if (!mEditMode || mGridLayerDirty) {
+			return false;
+		}
+		if ((mRootViewDrawable != null)
+				&& (mGridRootDrawable == mRootViewDrawable)
+				&& !isSnapshotLive(mRootView)) {
+			mRootViewDrawable.setBounds(requestCurrentRect(mTmpRect,
+					mRootView));
+			mRootViewDrawable.draw(canvas);
+			drawPressedCell(canvas);
+			return true;
+		}
+		if ((mGridLayerDrawable != null)
+				&& ((mRootView == null) || isSnapshotLive(mRootView))) {
+			canvas.drawBitmap(mGridLayerDrawable.getBitmap(), 0, 0, null);
+			drawPressedCell(canvas);
+			return true;
+		}
+		return false;
+	}
+
+	private void releaseGridLayer() {
+		releaseSnapshot(mGridLayerDrawable);
+		mGridLayerDrawable = null;
+		mGridLayerDirty = true;
+	}
+
+	private void drawCellGrid(Canvas canvas) {
+		drawCellGrid(canvas, mPressedCell);
+	}
+
+	// the grid layer is composed without a pressed cell
+	private void drawCellGrid(Canvas canvas, Cell pressedCell) {
+		if (GridTrace.ENABLED) {
+			GridTrace.beginSection(GridTrace.SECTION_GRID_DRAW);
+		}
+		if (mCellDrawable != null) {
+			final int count = mCells.size();
+			for (int i = 0; i < count; ++i) {
+				final Cell cell = mCells.get(i);
+				mTmpRect.set(cell.rect);
+				if (canvas.quickReject(mTmpRect.left, mTmpRect.top,
+						mTmpRect.right, mTmpRect.bottom, EdgeType.BW)) {
+					continue;
+				}
+				drawCell(canvas, cell, pressedCell == cell);
+			}
+		}
+		if (GridTrace.ENABLED) {
+			GridTrace.endSection();
+		}
+	}
+
+	private void drawPressedCell(Canvas canvas) {
+		if ((mPressedCell != null) && (mCellDrawable != null)) {
+			drawCell(canvas, mPressedCell, true);
+		}
+	}
+
+	private void drawCell(Canvas canvas, Cell cell, boolean pressed) {
+		final int[] stateSet = CELL_STATE_SETS[(mEditMode ? 1 : 0)
+				| (pressed ? 2 : 0)];
+
+		canvas.save();
+		canvas.clipRect(cell.rect);
+		mCellDrawable.setState(stateSet);
+		mCellDrawable.setBounds(cell.rect);
+		mCellDrawable.draw(canvas);
+		canvas.restore();
+	}
+
 	@Override
 	protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+		if (GridTrace.ENABLED) {
+			GridTrace.beginSection(GridTrace.SECTION_CHILD_DRAW);
+		}
+		final boolean result = drawGridChild(canvas, child, drawingTime);
+		if (GridTrace.ENABLED) {
+			GridTrace.endSection();
+		}
+		return result;
+	}
+
+	private boolean drawGridChild(Canvas canvas, View child, long drawingTime) {
+		if (isChildCulled(canvas, child)) {
+			++mCulledChildCount;
+			return false;
+		}
+		++mDrawnChildCount;
+
 		if (child == mRootView) {
+			if (isSnapshotLive(child)) {
+				// the layer holds the grid only
+				final boolean result = super.drawChild(canvas, child,
+						drawingTime);
+				if (!drawGridLayer(canvas)) {
+					drawCellGrid(canvas);
+				}
+				return result;
+			} else if (drawGridLayer(canvas)) {
+				return false;
+			}
 			final boolean result = drawChildDrawable(mRootViewDrawable, canvas,
 					child, drawingTime);
 			drawCellGrid(canvas);
@@ -670,20 +1507,54 @@ public class DragGridLayout extends ViewGroup {
 					return super.drawChild(canvas, child, drawingTime);
 				}
 
-				if ((mDragNode != null) && (mDragNode.viewDrawable == null)) {
-					mDragNode.viewDrawable = DragGridLayout
-							.createDrawingCache(mDragNode.view);
+				if ((mDragNode != null) && (mDragNode.viewDrawable == null)
+						&& !isSnapshotLive(child)) {
+					mDragSnapshotDirty = false;
+					mDragSnapshotTime = SystemClock.uptimeMillis();
+					mDragNode.viewDrawable = createSnapshot(mDragNode.view);
 				}
 				return drawChildDrawable(
 						mDragNode != null ? mDragNode.viewDrawable : null,
 								canvas, child, drawingTime);
+			} else if ((mDragGroup != null) && (mDragGroup.drawable != null)
+					&& mDragGroup.contains(child)) {
+				// drawn as a part of the group layer
+				return false;
 			} else {
-				return super.drawChild(canvas, child, drawingTime);
+				final boolean result = super.drawChild(canvas, child,
+						drawingTime);
+				if (mEditMode && (mHighlightDrawable != null)
+						&& isChildSelected(child)) {
+					mHighlightDrawable.setBounds(requestPreferredRect(mTmpRect,
+							child));
+					mHighlightDrawable.setState(SELECTED_STATE_SET);
+					mHighlightDrawable.draw(canvas);
+				}
+				if (mEditMode && (mResizeHandleDrawable != null)) {
+					requestResizeHandleRect(mTmpRect, child);
+					mResizeHandleDrawable.setBounds(mTmpRect);
+					mResizeHandleDrawable.draw(canvas);
+				}
+				return result;
 			}
 		}
 		return false;
 	}
 
+	private boolean isChildCulled(Canvas canvas, View child) {
+		// the root view, the dragged view and animated views may be drawn
+		// outside of their layout bounds
+		if ((child == mRootView) || (child.getAnimation() != null)
+				|| ((mDragNode != null) && (mDragNode.view == child))
+				|| !child.getMatrix().isIdentity()) {
+			return false;
+		}
+
+		requestCurrentRect(mTmpRect, child);
+		return canvas.quickReject(mTmpRect.left, mTmpRect.top,
+				mTmpRect.right, mTmpRect.bottom, EdgeType.BW);
+	}
+
 	private boolean drawChildDrawable(BitmapDrawable childDrawable,
 			Canvas canvas, View child, long drawingTime) {
 		canvas.save();
@@ -707,7 +1578,7 @@ public class DragGridLayout extends ViewGroup {
 
 	private void drawHighlight(final View child, final Canvas canvas) {
 		if ((mHighlightDrawable != null)) {
-			requestFreeCellRegion(mDragNode.view);
+			requestOccupancy(mDragNode.view, null);
 			if (!requestHoverRect(mTmpRect)) {
 				return;
 			}
@@ -715,62 +1586,42 @@ public class DragGridLayout extends ViewGroup {
 			canvas.clipRect(mTmpRect);
 			mHighlightDrawable.setBounds(mTmpRect);
 
-			mTmpRegion.set(mFreeCellsRegion);
-			mTmpRegion.op(mTmpRect, Op.INTERSECT);
-			mTmpRegion.getBounds(mTmpRect);
-
-			final boolean allowed = mTmpRegion.isRect()
-					&& (child.getWidth() <= mTmpRect.width())
-					&& (child.getHeight() <= mTmpRect.height());
-			final int[] stateSet = new int[] { (allowed ? 1 : -1)
-					* R.attr.state_drop_allow };
-
-			mHighlightDrawable.setState(stateSet);
+			final boolean allowed = mHoverComplete
+					&& mGrid.isFree(mHoveredArea.column, mHoveredArea.row,
+							mHoveredArea.horizontalSize,
+							mHoveredArea.verticalSize, GridModel.FREE);
+			mHighlightDrawable.setState(allowed ? DROP_ALLOW_STATE_SET
+					: DROP_DENY_STATE_SET);
 			mHighlightDrawable.draw(canvas);
 			canvas.restore();
 		}
 	}
 
-	private void fillHoveredCells(Cell startCell, int vDir, int hDir,
-			int vSize, int hSize) {
-		Cell rowCell = startCell;
-		for (int i = 0; i < vSize; ++i) {
-			Cell colCell = rowCell;
-			for (int j = 0; j < hSize; ++j) {
-				mHoveredCells.add(colCell);
-				colCell = (hDir > 0) ? rowCell.right : rowCell.left;
-				if (colCell == null) {
-					break;
-				}
-			}
-			rowCell = (vDir > 0) ? rowCell.bottom : rowCell.top;
-			if (rowCell == null) {
-				break;
+	private void drawGroup(Canvas canvas) {
+		final Group group = mDragGroup;
+		if ((mHighlightDrawable != null) && mHoverComplete) {
+			mHighlightDrawable.setState(mGroupDropAllowed ? DROP_ALLOW_STATE_SET
+					: DROP_DENY_STATE_SET);
+			for (int i = 0; i < group.views.length; ++i) {
+				final int left = mGrid.getCellLeft(mHoveredArea.column
+						+ group.columns[i]);
+				final int top = mGrid.getCellTop(mHoveredArea.row
+						+ group.rows[i]);
+				mHighlightDrawable.setBounds(left, top, left
+						+ (group.horizontalSizes[i] * mCellSize), top
+						+ (group.verticalSizes[i] * mCellSize));
+				mHighlightDrawable.draw(canvas);
 			}
 		}
+		if ((group.drawable != null) && !group.drawable.getBitmap().isRecycled()) {
+			group.drawable.setBounds(group.currentRect);
+			group.drawable.draw(canvas);
+		}
 	}
 
 	private Cell findCellUnder(float x, float y) {
-		final Rect rect = new Rect((int) x, (int) y, Math.round(x),
-				Math.round(y));
-		return findCellUnder(rect);
-	}
-
-	private Cell findCellUnder(Rect rect) {
-		Cell resCell = null;
-		final Rect resRect = new Rect();
-		for (final Cell cell : mCells) {
-			if (mTmpRect.setIntersect(cell.rect, rect)) {
-				if ((resCell == null)
-						|| ((mTmpRect.width() * mTmpRect.height()) > (resRect
-								.width() * resRect.height()))) {
-					resRect.set(mTmpRect);
-					resCell = cell;
-				}
-			}
-		}
-
-		return resCell;
+		final int index = mGrid.findCellAt((int) x, (int) y);
+		return index != GridModel.NO_CELL ? mCells.get(index) : null;
 	}
 
 	public Cell findFreeCell(int rows, int cols, Region freeRegion) {
@@ -814,32 +1665,22 @@ public class DragGridLayout extends ViewGroup {
 		return null;
 	}
 
-	private Set<Node> findNodesUnder(Node dragNode, Set<Cell> hoveredCells) {
-		if ((dragNode == null) || hoveredCells.isEmpty()) {
+	private Set<Node> findNodesUnder(Node dragNode, GridModel.Area hoveredArea) {
+		if ((dragNode == null) || hoveredArea.isEmpty()) {
 			return Collections.emptySet();
 		}
 
-		final Rect tmpRect = new Rect();
-		final Region tmpRegion = new Region();
-		for (Cell cell : hoveredCells) {
-			tmpRegion.union(cell.rect);
-		}
-
-		Set<Node> nodes = new HashSet<Node>();
-		int childCount = getChildCount();
-		for (int i = 0; i < childCount; ++i) {
-			View child = getChildAt(i);
-			if ((child == mRootView) || (child == dragNode.view)) {
-				continue;
-			}
-
-			requestCurrentRect(tmpRect, child);
-			mTmpRegion.set(tmpRegion);
-			mTmpRegion.op(tmpRect, Op.INTERSECT);
-
-			if (!mTmpRegion.isEmpty()) {
-				nodes.add(new Node(child, tmpRect));
-			}
+		requestOccupancy(dragNode.view, null);
+		final int count = mGrid.collectOwners(hoveredArea.column,
+				hoveredArea.row, hoveredArea.horizontalSize,
+				hoveredArea.verticalSize, GridModel.FREE, mTmpOwners);
+
+		final Set<Node> nodes = new HashSet<Node>();
+		for (int i = 0; i < count; ++i) {
+			final View child = getChildAt(mTmpOwners[i] - 1);
+			// displaced widgets are drawn live, so no snapshot is taken
+			nodes.add(new Node(child, requestCurrentRect(mTmpRect, child),
+					null));
 		}
 		return nodes;
 	}
@@ -862,13 +1703,6 @@ public class DragGridLayout extends ViewGroup {
 		return new DragGridLayout.LayoutParams(p);
 	}
 
-	private int getArea(int l, int t, int r, int b) {
-		int w = r - l;
-		int h = b - t;
-
-		return (w * w) + (h * h);
-	}
-
 	public List<Cell> getCells() {
 		return mCells;
 	}
@@ -911,6 +1745,417 @@ public class DragGridLayout extends ViewGroup {
 		super.setOnHierarchyChangeListener(mHierarchyChangeListener);
 		setChildrenDrawingOrderEnabled(true);
 		setClipToPadding(false);
+
+		final ActivityManager activityManager = (ActivityManager) getContext()
+				.getSystemService(Context.ACTIVITY_SERVICE);
+		mSnapshotCache = new SnapshotCache((activityManager.getMemoryClass()
+				* 1024 * 1024) / SNAPSHOT_CACHE_HEAP_DIVIDER);
+	}
+
+	/**
+	 * @return the number of children drawn during the last frame
+	 */
+	public int getDrawnChildCount() {
+		return mDrawnChildCount;
+	}
+
+	/**
+	 * @return the number of children skipped during the last frame because
+	 *         they were outside of the canvas clip
+	 */
+	public int getCulledChildCount() {
+		return mCulledChildCount;
+	}
+
+	public OnPerformanceListener getPerformanceListener() {
+		return mPerformanceListener;
+	}
+
+	/**
+	 * Enables phase timing, timing costs a null check when no listener is
+	 * set.
+	 */
+	public void setPerformanceListener(OnPerformanceListener listener) {
+		mPerformanceListener = listener;
+	}
+
+	public OnDragStatsListener getDragStatsListener() {
+		return mDragStatsListener;
+	}
+
+	/**
+	 * Enables per drag session frame statistics, collecting them costs a null
+	 * check when no listener is set.
+	 */
+	public void setDragStatsListener(OnDragStatsListener listener) {
+		mDragStatsListener = listener;
+		if ((listener != null) && (mDragStats == null)) {
+			mDragStats = new DragSessionStats();
+		} else if (listener == null) {
+			mDragSessionActive = false;
+		}
+	}
+
+	private void startDragSession() {
+		if (mDragStatsListener != null) {
+			mDragStats.start(SystemClock.uptimeMillis());
+			mPendingTouchNanos = 0;
+			mDragSessionActive = true;
+		}
+	}
+
+	private void finishDragSession(View view) {
+		if (!mDragSessionActive) {
+			return;
+		}
+		mDragSessionActive = false;
+		mDragStats.finish(SystemClock.uptimeMillis());
+		mDragStatsListener.onDragStats(view, mDragStats, this);
+	}
+
+	// frame duration is measured from the frame time (vsync) to the end of
+	// our draw, touch latency from the event time to the same point; all of
+	// them are on the uptime clock
+	private void onDragSessionFrame() {
+		final long now = System.nanoTime();
+		mDragStats.onFrame(now - (getDrawingTime() * 1000000L));
+		if (mPendingTouchNanos != 0) {
+			mDragStats.onTouchToFrame(now - mPendingTouchNanos);
+			mPendingTouchNanos = 0;
+		}
+	}
+
+	void setGestureRecorder(GestureRecorder recorder) {
+		mGestureRecorder = recorder;
+	}
+
+	private long startPhase() {
+		return (mPerformanceListener != null) || (mDebugOverlay != null) ? System
+				.nanoTime() : 0;
+	}
+
+	private void endPhase(int phase, long start) {
+		if ((mPerformanceListener == null) && (mDebugOverlay == null)) {
+			return;
+		}
+		final long nanos = System.nanoTime() - start;
+		if (mPerformanceListener != null) {
+			mPerformanceListener.onPhase(phase, nanos);
+		}
+		if (mDebugOverlay != null) {
+			mDebugOverlay.onPhase(phase, nanos);
+		}
+	}
+
+	private BitmapDrawable createSnapshot(View view) {
+		if (GridTrace.ENABLED) {
+			GridTrace.beginSection(GridTrace.SECTION_SNAPSHOT);
+		}
+		final long start = startPhase();
+		final Bitmap.Config config = ((mSnapshotFlags & SNAPSHOT_OPAQUE_RGB_565) != 0)
+				&& view.isOpaque() ? Bitmap.Config.RGB_565
+						: Bitmap.Config.ARGB_8888;
+		// hardware bitmaps can't be drawn into software canvases, e.g. a
+		// detached layout rendered offscreen, nor be refreshed in place
+		final boolean hardware = ((mSnapshotFlags & SNAPSHOT_HARDWARE) != 0)
+				&& isHardwareAccelerated()
+				&& (getSnapshotRefresh(view) == SNAPSHOT_REFRESH_FROZEN);
+		final BitmapDrawable drawable = DragGridLayout.createDrawingCache(view,
+				mSnapshotCanvas, getSnapshotWidth(view),
+				getSnapshotHeight(view), config, hardware);
+		endPhase(OnPerformanceListener.PHASE_SNAPSHOT, start);
+
+		if (drawable != null) {
+			mSnapshotBytes += drawable.getBitmap().getByteCount();
+			if (GridTrace.ENABLED) {
+				GridTrace.setCounter(GridTrace.COUNTER_SNAPSHOT_BYTES,
+						mSnapshotBytes);
+			}
+		}
+		if (GridTrace.ENABLED) {
+			GridTrace.endSection();
+		}
+		return drawable;
+	}
+
+	private void releaseSnapshot(BitmapDrawable drawable) {
+		if ((drawable == null) || drawable.getBitmap().isRecycled()) {
+			return;
+		}
+		mSnapshotBytes -= drawable.getBitmap().getByteCount();
+		drawable.getBitmap().recycle();
+		if (GridTrace.ENABLED) {
+			GridTrace.setCounter(GridTrace.COUNTER_SNAPSHOT_BYTES,
+					mSnapshotBytes);
+		}
+	}
+
+	private static int getSnapshotRefresh(View child) {
+		final ViewGroup.LayoutParams lp = child.getLayoutParams();
+		return lp instanceof LayoutParams ? ((LayoutParams) lp).mSnapshotRefresh
+				: SNAPSHOT_REFRESH_FROZEN;
+	}
+
+	private static boolean isSnapshotLive(View child) {
+		return getSnapshotRefresh(child) == SNAPSHOT_REFRESH_LIVE;
+	}
+
+	/**
+	 * @return uptime of the refresh of the shown snapshot of the child, which
+	 *         invalidated, given its pending refresh and last capture
+	 */
+	private long scheduleSnapshotRefresh(View child, long refreshTime,
+			long snapshotTime) {
+		final int refresh = getSnapshotRefresh(child);
+		if ((refresh <= 0) || (refreshTime != 0)) {
+			return refreshTime;
+		}
+		final long time = Math.max(SystemClock.uptimeMillis(), snapshotTime
+				+ refresh);
+		mHandler.sendEmptyMessageAtTime(SNAPSHOT_MESSAGE, time);
+		return time;
+	}
+
+	/**
+	 * Takes due snapshots of the root and dragged views again.
+	 *
+	 * @return false if a refresh was left for the next slot because the
+	 *         budget ran out
+	 */
+	private boolean refreshSnapshots(long startNanos) {
+		final long now = SystemClock.uptimeMillis();
+		if ((mRootRefreshTime != 0) && (mRootRefreshTime <= now)) {
+			mRootRefreshTime = 0;
+			if (mEditMode && (mRootView != null) && (mRootViewDrawable != null)) {
+				// the refresh wipes the composed grid
+				mGridRootDrawable = null;
+				mRootViewDrawable = refreshSnapshot(mRootView,
+						mRootViewDrawable);
+				mRootSnapshotTime = now;
+				mRootSnapshotDirty = false;
+				mGridLayerDirty = true;
+				invalidate();
+			}
+		}
+		if ((mDragRefreshTime != 0) && (mDragRefreshTime <= now)) {
+			if ((System.nanoTime() - startNanos) > SNAPSHOT_BUDGET_NANOS) {
+				return false;
+			}
+			mDragRefreshTime = 0;
+			if ((mDragNode != null) && (mDragNode.viewDrawable != null)) {
+				mDragNode.viewDrawable = refreshSnapshot(mDragNode.view,
+						mDragNode.viewDrawable);
+				mDragSnapshotTime = now;
+				mDragSnapshotDirty = false;
+				invalidate();
+			}
+		}
+		return true;
+	}
+
+	// draws into the bitmap of the snapshot when it still fits
+	private BitmapDrawable refreshSnapshot(View view, BitmapDrawable drawable) {
+		final Bitmap bitmap = drawable.getBitmap();
+		if (!bitmap.isMutable() || !isSnapshotOf(drawable, view)) {
+			releaseSnapshot(drawable);
+			return createSnapshot(view);
+		}
+		if (GridTrace.ENABLED) {
+			GridTrace.beginSection(GridTrace.SECTION_SNAPSHOT);
+		}
+		final long start = startPhase();
+		bitmap.eraseColor(0);
+		drawSnapshot(view, mSnapshotCanvas, bitmap);
+		endPhase(OnPerformanceListener.PHASE_SNAPSHOT, start);
+		if (GridTrace.ENABLED) {
+			GridTrace.endSection();
+		}
+		return drawable;
+	}
+
+	private void cancelSnapshotRefresh() {
+		mRootRefreshTime = 0;
+		mDragRefreshTime = 0;
+	}
+
+	private void prewarmSnapshot(View child) {
+		if (!mEditMode || (child.getParent() != this) || isSnapshotLive(child)) {
+			return;
+		}
+		if (child == mRootView) {
+			if (mRootViewDrawable == null) {
+				mRootViewDrawable = takeSnapshot(child);
+				mRootSnapshotTime = SystemClock.uptimeMillis();
+				mRootSnapshotDirty = false;
+				mGridLayerDirty = true;
+				// composed here so that the frame switching to the layer
+				// doesn't pay for it
+				updateGridLayer();
+				invalidate();
+			}
+		} else if ((mDragNode == null) || (mDragNode.view != child)) {
+			final BitmapDrawable cached = mSnapshotCache.get(child.getId());
+			if ((cached == null) || !isSnapshotOf(cached, child)) {
+				putCachedSnapshot(child, createSnapshot(child), false);
+			}
+		}
+	}
+
+	private float getSnapshotScale(View view) {
+		// the root view is never scaled, widgets are dragged at mScaleFactor
+		if ((view == mRootView) || ((mSnapshotFlags & SNAPSHOT_DOWNSCALE) == 0)) {
+			return 1f;
+		}
+		return Math.min(1f, mScaleFactor);
+	}
+
+	private int getSnapshotWidth(View view) {
+		return Math.round(view.getWidth() * getSnapshotScale(view));
+	}
+
+	private int getSnapshotHeight(View view) {
+		return Math.round(view.getHeight() * getSnapshotScale(view));
+	}
+
+	private boolean isSnapshotOf(BitmapDrawable drawable, View child) {
+		final Bitmap bitmap = drawable.getBitmap();
+		return !bitmap.isRecycled()
+				&& (bitmap.getWidth() == getSnapshotWidth(child))
+				&& (bitmap.getHeight() == getSnapshotHeight(child));
+	}
+
+	/**
+	 * Hands out the cached snapshot of the child if it's still valid or takes
+	 * a new one, the caller owns it until {@link #putCachedSnapshot}.
+	 */
+	private BitmapDrawable takeSnapshot(View child) {
+		final BitmapDrawable cached = mSnapshotCache.remove(child.getId());
+		if (cached != null) {
+			if (isSnapshotOf(cached, child)) {
+				return cached;
+			}
+			releaseSnapshot(cached);
+		}
+		return createSnapshot(child);
+	}
+
+	private void putCachedSnapshot(View child, BitmapDrawable drawable,
+			boolean dirty) {
+		if ((drawable == null) || drawable.getBitmap().isRecycled()) {
+			return;
+		}
+		if (dirty || (child.getParent() != this)) {
+			releaseSnapshot(drawable);
+			return;
+		}
+		mSnapshotCache.put(child.getId(), drawable);
+		if (GridTrace.ENABLED) {
+			GridTrace.setCounter(GridTrace.COUNTER_SNAPSHOT_CACHE_BYTES,
+					mSnapshotCache.size());
+		}
+	}
+
+	private void dropCachedSnapshot(View child) {
+		if (mSnapshotCache.size() == 0) {
+			return;
+		}
+		final BitmapDrawable cached = mSnapshotCache.remove(child.getId());
+		if (cached != null) {
+			releaseSnapshot(cached);
+		}
+	}
+
+	// content changes of a child make its snapshot stale, moves done by our
+	// own layout don't
+	private void onChildInvalidated(View child) {
+		if ((child == null) || mLayoutInProgress) {
+			return;
+		}
+		if (child == mRootView) {
+			mRootSnapshotDirty = true;
+			if (mRootViewDrawable != null) {
+				mRootRefreshTime = scheduleSnapshotRefresh(child,
+						mRootRefreshTime, mRootSnapshotTime);
+			}
+		}
+		if ((mDragNode != null) && (mDragNode.view == child)) {
+			mDragSnapshotDirty = true;
+			if (mDragNode.viewDrawable != null) {
+				mDragRefreshTime = scheduleSnapshotRefresh(child,
+						mDragRefreshTime, mDragSnapshotTime);
+			}
+		}
+		dropCachedSnapshot(child);
+	}
+
+	@Override
+	public void onDescendantInvalidated(View child, View target) {
+		super.onDescendantInvalidated(child, target);
+		onChildInvalidated(child);
+	}
+
+	@SuppressWarnings("deprecation")
+	@Override
+	public ViewParent invalidateChildInParent(int[] location, Rect dirty) {
+		// location holds the position of the direct child the invalidation
+		// comes through, and that child is the one flagged dirty by now.
+		// The flag tells it from others laid out at the same position
+		final int count = getChildCount();
+		for (int i = 0; i < count; ++i) {
+			final View child = getChildAt(i);
+			if (child.isDirty() && (child.getLeft() == location[0])
+					&& (child.getTop() == location[1])) {
+				onChildInvalidated(child);
+			}
+		}
+		return super.invalidateChildInParent(location, dirty);
+	}
+
+	/**
+	 * @return bytes held by the snapshot cache
+	 */
+	public int getSnapshotCacheBytes() {
+		return mSnapshotCache.size();
+	}
+
+	/**
+	 * @return bytes held by all snapshots, cached ones and the ones in use
+	 */
+	public long getSnapshotBytes() {
+		return mSnapshotBytes;
+	}
+
+	private void logTouchEvent(int action, float x, float y) {
+		final int type;
+		switch (action) {
+		case MotionEvent.ACTION_DOWN:
+			type = GridEventLog.TYPE_DOWN;
+			break;
+		case MotionEvent.ACTION_MOVE:
+			type = GridEventLog.TYPE_MOVE;
+			break;
+		case MotionEvent.ACTION_UP:
+			type = GridEventLog.TYPE_UP;
+			break;
+		case MotionEvent.ACTION_CANCEL:
+			type = GridEventLog.TYPE_CANCEL;
+			break;
+		default:
+			return;
+		}
+		mEventLog.log(type, x, y, mGrid.findCellAt((int) x, (int) y),
+				mDragNode != null ? mDragNode.view.getId() : View.NO_ID);
+	}
+
+	public GridEventLog getEventLog() {
+		return mEventLog;
+	}
+
+	/**
+	 * Prints the recent gesture and reorder events of the layout.
+	 */
+	public void dumpEventLog(PrintWriter writer) {
+		mEventLog.dump(writer);
 	}
 
 	public boolean isDebugMode() {
@@ -953,9 +2198,14 @@ public class DragGridLayout extends ViewGroup {
 		final LayoutParams lp = (LayoutParams) child.getLayoutParams();
 
 		if (mRootView == child) {
+			lp.invalidateMeasureCache();
 			childWidthMeasureSpec = parentWidthMeasureSpec;
 			childHeightMeasureSpec = parentHeightMeasureSpec;
 		} else if (((mDragNode) != null) && (mDragNode.view == child)) {
+			// dragged size differs from the span size, so it must be
+			// measured again once the drag is over
+			lp.invalidateMeasureCache();
+
 			final int width = mDragNode.currentRect.width();
 			final int height = mDragNode.currentRect.height();
 
@@ -970,6 +2220,15 @@ public class DragGridLayout extends ViewGroup {
 					.makeMeasureSpec(heightSize, MeasureSpec.EXACTLY),
 					getPaddingTop() + getPaddingBottom(), height);
 		} else {
+			if ((mCellSize > 0)
+					&& !child.isLayoutRequested()
+					&& lp.isMeasureCached(mCellSize, parentWidthMeasureSpec,
+							parentHeightMeasureSpec, getPaddingLeft()
+							+ getPaddingRight(), getPaddingTop()
+							+ getPaddingBottom())) {
+				return;
+			}
+
 			final int width = (lp.mHorizontalSize * mCellSize)
 					- (lp.leftMargin + lp.rightMargin);
 			final int height = (lp.mVerticalSize * mCellSize)
@@ -981,22 +2240,50 @@ public class DragGridLayout extends ViewGroup {
 			childHeightMeasureSpec = ViewGroup.getChildMeasureSpec(
 					parentHeightMeasureSpec, getPaddingTop()
 					+ getPaddingBottom(), height);
+			child.measure(childWidthMeasureSpec, childHeightMeasureSpec);
+			if (mCellSize > 0) {
+				lp.setMeasureCached(mCellSize, parentWidthMeasureSpec,
+						parentHeightMeasureSpec, getPaddingLeft()
+						+ getPaddingRight(), getPaddingTop()
+						+ getPaddingBottom());
+			}
+			lp.mMeasuredSinceLayout = true;
+			return;
 		}
 		child.measure(childWidthMeasureSpec, childHeightMeasureSpec);
+		lp.mMeasuredSinceLayout = true;
 	}
 
 	@Override
 	protected void onDetachedFromWindow() {
+		mSnapshotScheduler.stop();
+		cancelSnapshotRefresh();
+		getContext().unregisterComponentCallbacks(mSnapshotCache);
+		mSnapshotCache.evictAll();
+		releaseGridLayer();
+		mGridRootDrawable = null;
 		if (mRootViewDrawable != null) {
-			mRootViewDrawable.getBitmap().recycle();
+			releaseSnapshot(mRootViewDrawable);
 			mRootViewDrawable = null;
 		}
 		mLoongHoveredRequested = false;
 		mHandler.removeMessages(LONGPRESS_MESSAGE);
 		mHandler.removeMessages(LONGHOVER_MESSAGE);
+		if (mDebugOverlay != null) {
+			mDebugOverlay.stop();
+		}
 		super.onDetachedFromWindow();
 	}
 
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		getContext().registerComponentCallbacks(mSnapshotCache);
+		if (mDebugOverlay != null) {
+			mDebugOverlay.start();
+		}
+	}
+
 	@Override
 	public boolean onInterceptTouchEvent(MotionEvent ev) {
 		if (mEditMode) {
@@ -1007,10 +2294,13 @@ public class DragGridLayout extends ViewGroup {
 
 	@Override
 	protected void onLayout(boolean changed, int l, int t, int r, int b) {
+		final long start = startPhase();
 		final int count = getChildCount();
 
+		mLayoutInProgress = true;
 		for (int i = 0; i < count; i++) {
 			final View child = getChildAt(i);
+			registerChildId(child);
 			if (child.getVisibility() == GONE) {
 				continue;
 			}
@@ -1045,17 +2335,34 @@ public class DragGridLayout extends ViewGroup {
 				childBottom = 0;
 			}
 
+			// a child measured in this pass may have new content at the same
+			// bounds, without the force layout flag
+			if (!child.isLayoutRequested() && !lp.mMeasuredSinceLayout
+					&& (child.getLeft() == childLeft)
+					&& (child.getTop() == childTop)
+					&& (child.getRight() == childRight)
+					&& (child.getBottom() == childBottom)) {
+				continue;
+			}
+			lp.mMeasuredSinceLayout = false;
 			child.layout(childLeft, childTop, childRight, childBottom);
 		}
+		mLayoutInProgress = false;
+		if (mDragSessionActive) {
+			mDragStats.onLayout();
+		}
+		endPhase(OnPerformanceListener.PHASE_LAYOUT, start);
 	}
 
 	@Override
 	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		final long start = startPhase();
 		super.onMeasure(widthMeasureSpec, heightMeasureSpec);
 		
 		//resolveGrid(getMeasuredWidth(), getMeasuredHeight());
 
 		measureChildren(widthMeasureSpec, heightMeasureSpec);
+		endPhase(OnPerformanceListener.PHASE_MEASURE, start);
 	}
 
 	@Override
@@ -1064,12 +2371,19 @@ public class DragGridLayout extends ViewGroup {
 	}
 
 	private void resolveGrid(int w, int h) {
-		mCellsRegion.setEmpty();
+		final long start = startPhase();
 
+		mGridLayerDirty = true;
 		mCells.clear();
-		mHoveredCells.clear();
+		mHoveredArea.setEmpty();
+		mHoverComplete = false;
+		mReorderGridStale = true;
+		// cells of pending reorder plans mean nothing on the new grid
+		++mReorderGeneration;
 		mCellSize = resolveCellSize(w, h);
 		if (!(mCellSize > 0)) {
+			mGrid.setGeometry(0, 0, 0, 0, 0);
+			endPhase(OnPerformanceListener.PHASE_RESOLVE_GRID, start);
 			return;
 		}
 
@@ -1095,20 +2409,45 @@ public class DragGridLayout extends ViewGroup {
 			y += mCellSize;
 		}
 
-		mCellsRegion.set(mCells.get(0).rect.left, mCells.get(0).rect.top,
-				mCells.get(mCells.size() - 1).rect.right,
-				mCells.get(mCells.size() - 1).rect.bottom);
+		if (mCells.isEmpty()) {
+			mGrid.setGeometry(0, 0, 0, 0, 0);
+			endPhase(OnPerformanceListener.PHASE_RESOLVE_GRID, start);
+			return;
+		}
+		mGrid.setGeometry(x, mCells.get(0).rect.top, mCellSize, cellCount,
+				mCells.size() / cellCount);
+
+		if (mDebugOverlay != null) {
+			mDebugOverlay.resizeHeat(mGrid.getCellCount());
+		}
+
+		if (mPendingPlacements != null) {
+			submitLayout(mPendingPlacements, mPendingViewFactory);
+		}
 
 		if (validateChildrenLayoutParams()) {
 			requestLayout();
 			invalidate();
 		}
+		endPhase(OnPerformanceListener.PHASE_RESOLVE_GRID, start);
 	}
 
 	@Override
 	public boolean onTouchEvent(MotionEvent ev) {
+		if (GridTrace.ENABLED) {
+			GridTrace.beginSection(GridTrace.SECTION_TOUCH);
+		}
+		final boolean result = handleTouchEvent(ev);
+		if (GridTrace.ENABLED) {
+			GridTrace.endSection();
+		}
+		return result;
+	}
+
+	private boolean handleTouchEvent(MotionEvent ev) {
 		final float x = ev.getX();
 		final float y = ev.getY();
+		logTouchEvent(ev.getActionMasked(), x, y);
 		if (mGestureDetector.onTouchEvent(ev)) {
 			mPrevX = x;
 			mPrevY = y;
@@ -1118,23 +2457,43 @@ public class DragGridLayout extends ViewGroup {
 		switch (ev.getAction() & MotionEvent.ACTION_MASK) {
 		case MotionEvent.ACTION_DOWN:
 			if (mEditMode) {
+				if ((mDragNode == null) && (mDragGroup == null)
+						&& (mResizeView == null) && startResize(x, y)) {
+					return true;
+				}
 				final View child = findIntersectChild(x, y);
 				if (child != null) {
-					if ((mDragNode != null) && (mDragNode.view != child)) {
+					if (((mDragNode != null) && (mDragNode.view != child))
+							|| (mDragGroup != null)) {
 						return true;
 					}
 					mPrevX = x;
 					mPrevY = y;
 
+					if ((mDragNode == null) && (mSelectedChildren.size() > 1)
+							&& isChildSelected(child)
+							&& startGroupDrag(child, x, y)) {
+						return true;
+					}
+
 					stopAnimation(mDragNode != null ? mDragNode.view : null);
 
-					mDragNode = new Node(child, requestPreferredRect(mTmpRect,
-							child));
+					mDragSnapshotDirty = false;
+					mDragSnapshotTime = SystemClock.uptimeMillis();
+					mDragRefreshTime = 0;
+					final Node node = new Node(child, requestPreferredRect(
+							mTmpRect, child), isSnapshotLive(child) ? null
+									: takeSnapshot(child));
+					mDragNode = node;
 					Node.scale(mDragNode.currentRect, mScaleFactor);
 
-					requestFreeCellRegion(child);
+					syncReorderGrid();
 					requestHoveredCells(mDragNode);
 
+					mEventLog.log(GridEventLog.TYPE_DRAG, x, y,
+							mGrid.findCellAt((int) x, (int) y), child.getId());
+					++mReorderGeneration;
+					startDragSession();
 					if (mDragListener != null) {
 						mDragListener.onDrag(mDragNode.view, this);
 					}
@@ -1150,7 +2509,7 @@ public class DragGridLayout extends ViewGroup {
 					.setAnimationListener(new AbstractAnimationListener() {
 						@Override
 						public void onAnimationEnd(Animation animation) {
-							mTmpRect.set(mDragNode.startRect);
+							mTmpRect.set(node.startRect);
 
 							child.setAnimation(null);
 							child.requestLayout();
@@ -1166,8 +2525,9 @@ public class DragGridLayout extends ViewGroup {
 
 				final Cell cell = findCellUnder(x, y);
 				if (cell != null) {
+					// drawn over the grid layer, which stays as it is
 					mPressedCell = cell;
-					invalidate();
+					invalidate(cell.rect);
 					return true;
 				}
 
@@ -1179,35 +2539,30 @@ public class DragGridLayout extends ViewGroup {
 			if (mPressedCell != null) {
 				final Cell cell = findCellUnder(x, y);
 				if (mPressedCell != cell) {
+					invalidate(mPressedCell.rect);
 					mPressedCell = null;
-					invalidate();
 					return true;
 				}
+			} else if (mResizeView != null) {
+				requestResizeTarget(x, y);
+				return true;
 			} else if (mDragNode != null) {
+				if (mDragSessionActive && (mPendingTouchNanos == 0)) {
+					mPendingTouchNanos = ev.getEventTime() * 1000000L;
+				}
 				mDragNode.currentRect.offset((int) (x - mPrevX),
 						(int) (y - mPrevY));
-				if (mDebugMode) {
-					Log.w(VIEW_LOG_TAG, "ACTION_MOVE: x=" + x + " y=" + y
-							+ " prevX=" + mPrevX + " prevY=" + mPrevY + " dX="
-							+ (x - mPrevX) + " dY=" + (y - mPrevY));
-				}
-
 				requestHoveredCells(mDragNode);
 				boolean dragged = (Math.abs(x - mPrevX) < DELTA)
 						&& (Math.abs(y - mPrevY) < DELTA);
+				if (!dragged) {
+					// the user moved on, pending reorder plans are stale
+					++mReorderGeneration;
+				}
 				if (dragged) {
 					requestReorderRevert();
 				}
-				if (!mHoveredCells.isEmpty() && dragged) {
-					if (!mLoongHoveredRequested) {
-						mLoongHoveredRequested = true;
-						mHandler.sendEmptyMessageDelayed(LONGHOVER_MESSAGE,
-								LONGPRESS_TIMEOUT + TAP_TIMEOUT);
-					}
-				} else if (mLoongHoveredRequested) {
-					mLoongHoveredRequested = false;
-					mHandler.removeMessages(LONGHOVER_MESSAGE);
-				}
+				scheduleLongHover(!mHoveredArea.isEmpty() && dragged);
 
 				mPrevX = x;
 				mPrevY = y;
@@ -1215,6 +2570,25 @@ public class DragGridLayout extends ViewGroup {
 				requestLayout();
 				invalidate();
 				return true;
+			} else if (mDragGroup != null) {
+				mDragGroup.currentRect.offset((int) (x - mPrevX),
+						(int) (y - mPrevY));
+				requestGroupHover();
+				final boolean dragged = (Math.abs(x - mPrevX) < DELTA)
+						&& (Math.abs(y - mPrevY) < DELTA);
+				if (dragged) {
+					requestReorderRevert();
+				} else {
+					++mReorderGeneration;
+				}
+				scheduleLongHover(!mHoveredArea.isEmpty() && dragged);
+
+				mPrevX = x;
+				mPrevY = y;
+
+				// members stay laid out at their cells, only the layer moves
+				invalidate();
+				return true;
 			}
 			break;
 		case MotionEvent.ACTION_CANCEL:
@@ -1227,37 +2601,46 @@ public class DragGridLayout extends ViewGroup {
 							mPressedCell.rect.left, mPressedCell.rect.top),
 							this);
 				}
+				invalidate(mPressedCell.rect);
 				mPressedCell = null;
-				invalidate();
+				return true;
+			} else if (mResizeView != null) {
+				requestResizeTarget(x, y);
+				finishResize();
 				return true;
 			} else if (mDragNode != null) {
-				mDragNode.currentRect.offset((int) (x - mPrevX),
-						(int) (y - mPrevY));
-				
-				requestHoveredCells(mDragNode);
+				// listeners may remove the view, which cancels the drag
+				final Node node = mDragNode;
+				node.currentRect.offset((int) (x - mPrevX), (int) (y - mPrevY));
+
+				++mReorderGeneration;
+				requestHoveredCells(node);
 				requestReorderRevert();
-				requestDrop(mDragNode);
+				requestDrop(node);
 
 				mPrevX = x;
 				mPrevY = y;
 
-				mTmpRect.set(mDragNode.currentRect);
-				mTmpRect.union(mDragNode.startRect);
+				// onDrop() may draw through mTmpRect
+				final Rect dirty = new Rect(node.currentRect);
+				dirty.union(node.startRect);
 
-				final View child = mDragNode.view;
+				final View child = node.view;
 				final LayoutParams lp = (LayoutParams) child.getLayoutParams();
 
-				lp.mX = mDragNode.startRect.left;
-				lp.mY = mDragNode.startRect.top;
+				lp.mX = node.startRect.left;
+				lp.mY = node.startRect.top;
 
 				mNodes.clear();
-				mDragNode.startRect.offset(lp.leftMargin, lp.topMargin);
+				if (GridTrace.ENABLED) {
+					GridTrace.setCounter(GridTrace.COUNTER_DISPLACED_NODES, 0);
+				}
+				node.startRect.offset(lp.leftMargin, lp.topMargin);
 
 				final AnimationSet animation = new AnimationSet(true);
 				animation.addAnimation(new TranslateAnimation(
-						mDragNode.currentRect.left - mDragNode.startRect.left,
-						0, mDragNode.currentRect.top - mDragNode.startRect.top,
-						0));
+						node.currentRect.left - node.startRect.left, 0,
+						node.currentRect.top - node.startRect.top, 0));
 				animation.addAnimation(new ScaleAnimation(mScaleFactor, 1f,
 						mScaleFactor, 1f));
 
@@ -1265,8 +2648,14 @@ public class DragGridLayout extends ViewGroup {
 				animation.setAnimationListener(new AbstractAnimationListener() {
 					@Override
 					public void onAnimationEnd(final Animation a) {
-						mDragNode.dispose();
-						mDragNode = null;
+						// also fired by clearAnimation() of a view removed
+						// meanwhile, which cancelled the drag already
+						if (mDragNode == node) {
+							putCachedSnapshot(child, node.viewDrawable,
+									mDragSnapshotDirty);
+							node.viewDrawable = null;
+							mDragNode = null;
+						}
 
 						child.setAnimation(null);
 
@@ -1275,15 +2664,44 @@ public class DragGridLayout extends ViewGroup {
 					}
 				});
 
+				mEventLog.log(GridEventLog.TYPE_DROP, x, y,
+						mGrid.findCellByPosition(lp.mX, lp.mY), child.getId());
+				finishDragSession(child);
 				if (mDragListener != null) {
-					mDragListener.onDrop(mDragNode.view, this);
+					// a removal from within is cancelled after the call
+					mDropDispatching = true;
+					try {
+						mDragListener.onDrop(child, this);
+					} finally {
+						mDropDispatching = false;
+					}
+				}
+				if ((child.getParent() != this) || (mDragNode != node)) {
+					if (mDragNode == node) {
+						cancelDrag();
+					}
+					requestLayout();
+					invalidate();
+					return true;
 				}
 
-				mDragNode.currentRect.set(mDragNode.startRect);
+				node.currentRect.set(node.startRect);
 
 				child.requestLayout();
 				child.startAnimation(animation);
-				invalidate(mTmpRect);
+				invalidate(dirty);
+				return true;
+			} else if (mDragGroup != null) {
+				mDragGroup.currentRect.offset((int) (x - mPrevX),
+						(int) (y - mPrevY));
+
+				++mReorderGeneration;
+				requestGroupHover();
+				requestReorderRevert();
+				dropGroup(x, y);
+
+				mPrevX = x;
+				mPrevY = y;
 				return true;
 			} else if (mEditModeSwitchOff) {
 				setEditMode(false);
@@ -1296,168 +2714,788 @@ public class DragGridLayout extends ViewGroup {
 		return super.onTouchEvent(ev);
 	}
 
-	public void removeRootView() {
-		if (mRootView != null) {
-			super.removeView(mRootView);
+	/**
+	 * @return the child with the given id, looked up without walking the
+	 *         tree, or null. An id changed by {@link View#setId(int)} is
+	 *         found after the next layout, use
+	 *         {@link #setChildId(View, int)} to find it right away.
+	 */
+	public View findChildById(int id) {
+		final View child = mChildrenById.get(id);
+		if ((child != null) && (child.getId() == id)
+				&& (child.getParent() == this)) {
+			return child;
+		}
+		if (child != null) {
+			mChildrenById.remove(id);
 		}
+		return null;
 	}
 
-	private Rect requestCurrentRect(Rect outRect, View view) {
-		if (outRect == null) {
-			outRect = new Rect();
+	/**
+	 * Changes the id of the given child and its key for
+	 * {@link #findChildById(int)}.
+	 *
+	 * @return false if the view isn't a child of the layout
+	 */
+	public boolean setChildId(View child, int id) {
+		if (child.getParent() != this) {
+			return false;
 		}
+		child.setId(id);
+		registerChildId(child);
+		return true;
+	}
 
-		outRect.left = view.getLeft();
-		outRect.top = view.getTop();
-		outRect.right = view.getRight();
-		outRect.bottom = view.getBottom();
+	// re-keys the child when its id changed since it was registered, a
+	// child registered with the id before keeps it
+	private void registerChildId(View child) {
+		final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+		final int id = child.getId();
+		if ((lp.mRegisteredId == id) && (mChildrenById.get(id) == child)) {
+			return;
+		}
+		if (mChildrenById.get(lp.mRegisteredId) == child) {
+			mChildrenById.remove(lp.mRegisteredId);
+		}
+		final View other = mChildrenById.get(id);
+		if ((other == null) || (other.getParent() != this)
+				|| (other.getId() != id)) {
+			mChildrenById.put(id, child);
+		}
+		lp.mRegisteredId = id;
+	}
 
-		return outRect;
+	/**
+	 * Moves the child with the given id to the given cell if its span fits
+	 * there.
+	 *
+	 * @return false if there is no such child or the area isn't free
+	 */
+	public boolean moveChildById(int id, int column, int row) {
+		final View child = findChildById(id);
+		if ((child == null) || (child == mRootView) || isDragged(child)
+				|| mGrid.isEmpty()) {
+			return false;
+		}
+
+		final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+		requestOccupancy(child, null);
+		if (!mGrid.isFree(column, row, lp.mHorizontalSize, lp.mVerticalSize,
+				GridModel.FREE)) {
+			return false;
+		}
+
+		final int x = mGrid.getCellLeft(column);
+		final int y = mGrid.getCellTop(row);
+		if ((lp.mX != x) || (lp.mY != y)) {
+			if (child.getWidth() > 0) {
+				animateMove(child, child.getLeft() - (x + lp.leftMargin),
+						child.getTop() - (y + lp.topMargin));
+			}
+			lp.mX = x;
+			lp.mY = y;
+			mReorderGridStale = true;
+			child.requestLayout();
+		}
+		return true;
 	}
 
-	private void requestDrop(Node node) {
-		requestFreeCellRegion(node.view);
-		if (requestHoveredCells(node)) {
-			requestHoverRect(mTmpRect);
-			
-			mTmpRegion.set(mFreeCellsRegion);
-			mTmpRegion.op(mTmpRect, Op.INTERSECT);
-			
-			Rect bound = mTmpRegion.getBounds();
-			if (!mTmpRegion.isEmpty() && 
-				!mTmpRegion.isComplex() &&
-				(bound.width() == mTmpRect.width()) &&
-				(bound.height() == mTmpRect.height())) {
-				node.startRect.offsetTo(mTmpRect.left, mTmpRect.top);
-				return;
+	/**
+	 * @return false if there is no child with the given id
+	 */
+	public boolean removeChildById(int id) {
+		final View child = findChildById(id);
+		if ((child == null) || (child == mRootView)) {
+			return false;
+		}
+		removeView(child);
+		return true;
+	}
+
+	/**
+	 * Removes the given children (the root view is skipped) with a single
+	 * layout pass. Remove and hierarchy listeners are notified after all of
+	 * them are gone.
+	 */
+	public void removeViews(Collection<? extends View> views) {
+		final List<View> removed = new ArrayList<View>(views.size());
+		mBatchRemovedViews = removed;
+		try {
+			for (final View view : views) {
+				if ((view == null) || (view == mRootView)
+						|| (view.getParent() != this)) {
+					continue;
+				}
+				if (isDragged(view) && !mDropDispatching) {
+					cancelDrag();
+				}
+				view.clearAnimation();
+				removeViewInLayout(view);
 			}
+		} finally {
+			mBatchRemovedViews = null;
 		}
-	
-		final LayoutParams lp = (LayoutParams) node.view.getLayoutParams();
-		final LayoutParams newLp = validateLayoutParams(generateLayoutParams(lp), mFreeCellsRegion);
-		if ((lp.mX == newLp.mX) && (lp.mY == newLp.mY)){
+
+		if (removed.isEmpty()) {
 			return;
 		}
-		node.startRect.offsetTo(newLp.mX, newLp.mY);
+		requestLayout();
+		invalidate();
+		for (int i = 0; i < removed.size(); ++i) {
+			mHierarchyChangeListener.notifyChildViewRemoved(removed.get(i));
+		}
 	}
 
-	private void requestFreeCellRegion(View... views) {
-		mFreeCellsRegion.set(mCellsRegion);
+	/**
+	 * Removes every child but the root view with a single layout pass.
+	 */
+	public void clearWidgets() {
 		final int count = getChildCount();
-		for (int i = count - 1; i >= 0; --i) {
+		final List<View> views = new ArrayList<View>(count);
+		for (int i = 0; i < count; ++i) {
 			final View child = getChildAt(i);
-
-			if (child == mRootView) {
-				continue;
+			if (child != mRootView) {
+				views.add(child);
 			}
-			boolean needContinue = false;
+		}
+		removeViews(views);
+	}
 
-			for (View view : views) {
-				if (view == child) {
-					needContinue = true;
-					break;
-				}
+	private void cancelDrag() {
+		++mReorderGeneration;
+		mLoongHoveredRequested = false;
+		mHandler.removeMessages(LONGHOVER_MESSAGE);
+		mDragSessionActive = false;
+		mDragRefreshTime = 0;
+		if (mDragNode != null) {
+			releaseSnapshot(mDragNode.viewDrawable);
+			mDragNode = null;
+		}
+		if (mDragGroup != null) {
+			releaseSnapshot(mDragGroup.drawable);
+			mDragGroup = null;
+			invalidate();
+		}
+		mNodes.clear();
+	}
+
+	private void scheduleLongHover(boolean hovered) {
+		if (hovered) {
+			if (!mLoongHoveredRequested) {
+				mLoongHoveredRequested = true;
+				mHandler.sendEmptyMessageDelayed(LONGHOVER_MESSAGE,
+						LONGHOVER_TIMEOUT);
 			}
-			if (needContinue) {
-				continue;
+		} else if (mLoongHoveredRequested) {
+			mLoongHoveredRequested = false;
+			mHandler.removeMessages(LONGHOVER_MESSAGE);
+		}
+	}
+
+	private Rect requestResizeHandleRect(Rect outRect, View child) {
+		final int intrinsicSize = mResizeHandleDrawable != null ? mResizeHandleDrawable
+				.getIntrinsicWidth() : 0;
+		final int size = intrinsicSize > 0 ? intrinsicSize : mCellSize / 3;
+		requestCurrentRect(outRect, child);
+		outRect.left = outRect.right - size;
+		outRect.top = outRect.bottom - size;
+		return outRect;
+	}
+
+	private boolean startResize(float x, float y) {
+		if ((mResizeHandleDrawable == null) || mGrid.isEmpty()) {
+			return false;
+		}
+
+		View child = null;
+		for (int i = getChildCount() - 1; i >= 0; --i) {
+			final View view = getChildAt(i);
+			if ((view != mRootView)
+					&& requestResizeHandleRect(mTmpRect, view).contains(
+							(int) x, (int) y)) {
+				child = view;
+				break;
 			}
+		}
+		if (child == null) {
+			return false;
+		}
 
-			LayoutParams lp = (LayoutParams) child.getLayoutParams();
-			if ((lp.mX == UNKNOWN) || (lp.mY == UNKNOWN)) {
-				continue;
+		final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+		final int cell = mGrid.findCellByPosition(lp.mX, lp.mY);
+		if (cell == GridModel.NO_CELL) {
+			return false;
+		}
+		stopAnimation(child);
+		mResizeView = child;
+		mResizeColumn = mGrid.getColumn(cell);
+		mResizeRow = mGrid.getRow(cell);
+		mResizeHorizontalSize = lp.mHorizontalSize;
+		mResizeVerticalSize = lp.mVerticalSize;
+		mResizeStartHorizontalSize = lp.mHorizontalSize;
+		mResizeStartVerticalSize = lp.mVerticalSize;
+		mResizeTargetHorizontalSize = lp.mHorizontalSize;
+		mResizeTargetVerticalSize = lp.mVerticalSize;
+		mPrevX = x;
+		mPrevY = y;
+		return true;
+	}
+
+	private void requestResizeTarget(float x, float y) {
+		final LayoutParams lp = (LayoutParams) mResizeView.getLayoutParams();
+		// the grid might have been resolved anew since the resize started
+		final int cell = mGrid.findCellByPosition(lp.mX, lp.mY);
+		if (cell == GridModel.NO_CELL) {
+			return;
+		}
+		mResizeColumn = mGrid.getColumn(cell);
+		mResizeRow = mGrid.getRow(cell);
+		mResizeTargetHorizontalSize = Math.max(1, Math.min(mGrid.getColumns()
+				- mResizeColumn, Math.round((x - lp.mX) / mCellSize)));
+		mResizeTargetVerticalSize = Math.max(1, Math.min(mGrid.getRows()
+				- mResizeRow, Math.round((y - lp.mY) / mCellSize)));
+		mPrevX = x;
+		mPrevY = y;
+		if (!mResizeStepsPosted) {
+			requestResizeSteps(RESIZE_BUDGET_NANOS);
+		}
+	}
+
+	/**
+	 * Applies span steps toward the spans under the finger until they are
+	 * reached or the frame budget is spent, the rest continues on the next
+	 * frame. The occupancy is taken once per call and then updated
+	 * incrementally by every step.
+	 */
+	private void requestResizeSteps(long budgetNanos) {
+		if ((mResizeView == null) || (mResizeView.getParent() != this)) {
+			return;
+		}
+		final long start = System.nanoTime();
+		requestOccupancy(null, null);
+		mResizeOwner = indexOfChild(mResizeView) + 1;
+
+		boolean changed = false;
+		while ((mResizeHorizontalSize != mResizeTargetHorizontalSize)
+				|| (mResizeVerticalSize != mResizeTargetVerticalSize)) {
+			int horizontalSize = mResizeHorizontalSize;
+			int verticalSize = mResizeVerticalSize;
+			if (horizontalSize != mResizeTargetHorizontalSize) {
+				horizontalSize += horizontalSize < mResizeTargetHorizontalSize ? 1
+						: -1;
+			} else {
+				verticalSize += verticalSize < mResizeTargetVerticalSize ? 1
+						: -1;
+			}
+			if (!requestResizeStep(horizontalSize, verticalSize)) {
+				// no room for the widgets in the way, the span stops here
+				mResizeTargetHorizontalSize = mResizeHorizontalSize;
+				mResizeTargetVerticalSize = mResizeVerticalSize;
+				break;
 			}
+			changed = true;
+			if ((System.nanoTime() - start) > budgetNanos) {
+				break;
+			}
+		}
 
-			mFreeCellsRegion.op(requestPreferredRect(mTmpRect, child),
-					Op.DIFFERENCE);
+		if (changed) {
+			mReorderGridStale = true;
+			requestLayout();
+			invalidate();
+		}
+		if (((mResizeHorizontalSize != mResizeTargetHorizontalSize)
+				|| (mResizeVerticalSize != mResizeTargetVerticalSize))
+				&& !mResizeStepsPosted) {
+			mResizeStepsPosted = true;
+			postOnAnimation(mResizeStepsRunnable);
 		}
 	}
 
-	private boolean requestHoveredCells(Node node) {
-		mHoveredCells.clear();
-		if (mCellsRegion.quickReject(node.currentRect)) {
+	/**
+	 * Changes the spans of the resized child by one cell and moves the
+	 * widgets it now covers to the free cells nearest to them.
+	 *
+	 * @return false (with the occupancy left as it was) if some of them
+	 *         don't fit anywhere
+	 */
+	private boolean requestResizeStep(int horizontalSize, int verticalSize) {
+		if (!mGrid.isInside(mResizeColumn, mResizeRow, horizontalSize,
+				verticalSize)) {
 			return false;
 		}
+		mResizeStepGrid.set(mGrid);
 
-		mTmpRegion.set(mCellsRegion);
-		mTmpRegion.op(node.currentRect, Op.INTERSECT);
+		mGrid.occupy(mResizeColumn, mResizeRow, mResizeHorizontalSize,
+				mResizeVerticalSize, GridModel.FREE);
+		final int count = mGrid.collectOwners(mResizeColumn, mResizeRow,
+				horizontalSize, verticalSize, mResizeOwner, mTmpOwners);
+		mGrid.occupy(mResizeColumn, mResizeRow, horizontalSize,
+				verticalSize, mResizeOwner);
 
-		final View view = node.view;
-		final LayoutParams lp = (LayoutParams) view.getLayoutParams();
+		if (mResizeCells.length < count) {
+			mResizeCells = new int[count];
+		}
+		final int[] cells = mResizeCells;
+		for (int i = 0; i < count; ++i) {
+			final View child = getChildAt(mTmpOwners[i] - 1);
+			final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+			final int cell = mGrid.findCellByPosition(lp.mX, lp.mY);
+			if (cell == GridModel.NO_CELL) {
+				mGrid.set(mResizeStepGrid);
+				return false;
+			}
+			final int column = mGrid.getColumn(cell);
+			final int row = mGrid.getRow(cell);
+			mGrid.release(column, row, lp.mHorizontalSize, lp.mVerticalSize,
+					mTmpOwners[i]);
+			cells[i] = mGrid.findNearestFreeCell(lp.mHorizontalSize,
+					lp.mVerticalSize, GridModel.FREE, column, row);
+			if (cells[i] == GridModel.NO_CELL) {
+				mGrid.set(mResizeStepGrid);
+				return false;
+			}
+			mGrid.occupy(mGrid.getColumn(cells[i]), mGrid.getRow(cells[i]),
+					lp.mHorizontalSize, lp.mVerticalSize, mTmpOwners[i]);
+		}
 
-		int cellCount = lp.mHorizontalSize * lp.mVerticalSize;
+		for (int i = 0; i < count; ++i) {
+			final View child = getChildAt(mTmpOwners[i] - 1);
+			final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+			lp.mX = mGrid.getCellLeft(mGrid.getColumn(cells[i]));
+			lp.mY = mGrid.getCellTop(mGrid.getRow(cells[i]));
+			mEventLog.log(GridEventLog.TYPE_REORDER, lp.mX, lp.mY, cells[i],
+					child.getId());
+			if (child.getWidth() > 0) {
+				animateMove(child, child.getLeft() - (lp.mX + lp.leftMargin),
+						child.getTop() - (lp.mY + lp.topMargin));
+			}
+			child.requestLayout();
+		}
 
-		final Rect rect = mTmpRegion.getBounds();
+		final LayoutParams lp = (LayoutParams) mResizeView.getLayoutParams();
+		lp.mHorizontalSize = horizontalSize;
+		lp.mVerticalSize = verticalSize;
+		mResizeHorizontalSize = horizontalSize;
+		mResizeVerticalSize = verticalSize;
+		mResizeView.requestLayout();
+		return true;
+	}
 
-		Cell ltCell = null;
-		Cell rtCell = null;
-		Cell lbCell = null;
-		Cell rbCell = null;
+	private void finishResize() {
+		// the steps left over are applied at once, the finger is up
+		removeCallbacks(mResizeStepsRunnable);
+		mResizeStepsPosted = false;
+		requestResizeSteps(Long.MAX_VALUE);
+
+		final View view = mResizeView;
+		mResizeView = null;
+		if ((view.getParent() != this)
+				|| ((mResizeHorizontalSize == mResizeStartHorizontalSize)
+						&& (mResizeVerticalSize == mResizeStartVerticalSize))) {
+			return;
+		}
+		mEventLog.log(GridEventLog.TYPE_RESIZE, mResizeHorizontalSize,
+				mResizeVerticalSize, mGrid.indexOf(mResizeColumn, mResizeRow),
+				view.getId());
+		// the cached snapshot has the old size
+		dropCachedSnapshot(view);
+		if (mResizeListener != null) {
+			mResizeListener.onResize(view, mResizeHorizontalSize,
+					mResizeVerticalSize, this);
+		}
+	}
 
-		mTmpRegion.setEmpty();
-		for (final Cell cell : mCells) {
-			if (mTmpRect.setIntersect(cell.rect, rect)) {
-				if (mTmpRegion.isEmpty()) {
-					mTmpRegion.set(cell.rect);
-					ltCell = rtCell = lbCell = rbCell = cell;
-				} else {
-					mTmpRegion.op(cell.rect, Op.UNION);
+	public boolean isChildSelected(View child) {
+		return (child.getLayoutParams() instanceof LayoutParams)
+				&& ((LayoutParams) child.getLayoutParams()).mSelected;
+	}
 
-					if ((ltCell.rect.left >= cell.rect.left)
-							&& (ltCell.rect.top >= cell.rect.top)) {
-						ltCell = cell;
-					}
-					if ((rtCell.rect.right <= cell.rect.right)
-							&& (rtCell.rect.top >= cell.rect.top)) {
-						rtCell = cell;
-					}
-					if ((rbCell.rect.bottom <= cell.rect.bottom)
-							&& (lbCell.rect.left >= cell.rect.left)) {
-						lbCell = cell;
-					}
-					if ((rbCell.rect.bottom <= cell.rect.bottom)
-							&& (rbCell.rect.right <= cell.rect.right)) {
-						rbCell = cell;
-					}
+	public List<View> getSelectedChildren() {
+		return Collections.unmodifiableList(mSelectedChildren);
+	}
+
+	/**
+	 * Selects the child for a group drag, dragging any of two or more
+	 * selected children in edit mode moves all of them as one block. A tap
+	 * toggles the selection in edit mode, leaving edit mode clears it.
+	 */
+	public void setChildSelected(View child, boolean selected) {
+		if ((child == null) || (child == mRootView)
+				|| (child.getParent() != this)
+				|| (isChildSelected(child) == selected)) {
+			return;
+		}
+		((LayoutParams) child.getLayoutParams()).mSelected = selected;
+		if (!selected) {
+			mSelectedChildren.remove(child);
+		} else if (!mSelectedChildren.contains(child)) {
+			// params set anew drop the flag but not the entry
+			mSelectedChildren.add(child);
+		}
+		invalidate();
+	}
+
+	public void clearSelection() {
+		if (!mSelectedChildren.isEmpty()) {
+			for (int i = 0; i < mSelectedChildren.size(); ++i) {
+				final ViewGroup.LayoutParams lp = mSelectedChildren.get(i)
+						.getLayoutParams();
+				if (lp instanceof LayoutParams) {
+					((LayoutParams) lp).mSelected = false;
 				}
 			}
+			mSelectedChildren.clear();
+			invalidate();
 		}
+	}
 
-		if ((ltCell == null) || (rtCell == null) || (lbCell == null)
-				|| (rbCell == null)) {
+	private boolean startGroupDrag(View child, float x, float y) {
+		if (mGrid.isEmpty()) {
 			return false;
 		}
 
-		mTmpRegion.getBounds(mTmpRect);
-		int lt = getArea(mTmpRect.left, mTmpRect.top, rect.left, rect.top);
-		int rt = getArea(rect.right, mTmpRect.top, mTmpRect.right, rect.top);
-		int lb = getArea(mTmpRect.left, rect.bottom, rect.left, mTmpRect.bottom);
-		int rb = getArea(rect.right, rect.bottom, mTmpRect.right,
-				mTmpRect.bottom);
+		final int count = mSelectedChildren.size();
+		final Group group = new Group(child, count);
+		group.startRect.setEmpty();
+		for (int i = 0; i < count; ++i) {
+			final View view = mSelectedChildren.get(i);
+			final LayoutParams lp = (LayoutParams) view.getLayoutParams();
+			if ((lp.mX == UNKNOWN) || (lp.mY == UNKNOWN)) {
+				return false;
+			}
+			group.views[i] = view;
+			group.startRect.union(requestPreferredRect(mTmpRect, view));
+		}
+
+		for (int i = 0; i < count; ++i) {
+			final View view = group.views[i];
+			final LayoutParams lp = (LayoutParams) view.getLayoutParams();
+			stopAnimation(view);
+			group.columns[i] = (lp.mX - group.startRect.left) / mCellSize;
+			group.rows[i] = (lp.mY - group.startRect.top) / mCellSize;
+			group.horizontalSizes[i] = lp.mHorizontalSize;
+			group.verticalSizes[i] = lp.mVerticalSize;
+		}
+		group.horizontalSize = group.startRect.width() / mCellSize;
+		group.verticalSize = group.startRect.height() / mCellSize;
+		group.currentRect.set(group.startRect);
+		group.drawable = createGroupSnapshot(group);
+
+		mDragGroup = group;
+		syncReorderGrid();
+		requestGroupHover();
+
+		mEventLog.log(GridEventLog.TYPE_DRAG, x, y,
+				mGrid.findCellAt((int) x, (int) y), child.getId());
+		++mReorderGeneration;
+		startDragSession();
+		if (mDragListener != null) {
+			mDragListener.onDrag(child, this);
+		}
+		invalidate();
+		return true;
+	}
+
+	/**
+	 * Draws the members at their offsets into one layer, so a group frame
+	 * draws a single bitmap.
+	 */
+	private BitmapDrawable createGroupSnapshot(Group group) {
+		final int width = group.startRect.width();
+		final int height = group.startRect.height();
+		if ((width <= 0) || (height <= 0)) {
+			return null;
+		}
 
-		int min = Math.min(Math.min(lt, rt), Math.min(lb, rb));
-		if (min == lt) {
-			fillHoveredCells(ltCell, 1, 1, lp.mVerticalSize, lp.mHorizontalSize);
-		} else if (min == rt) {
-			fillHoveredCells(rtCell, 1, -1, lp.mVerticalSize, lp.mHorizontalSize);
-		} else if (min == lb) {
-			fillHoveredCells(lbCell, -1, 1, lp.mVerticalSize, lp.mHorizontalSize);
-		} else if (min == rb) {
-			fillHoveredCells(rbCell, -1, -1, lp.mVerticalSize, lp.mHorizontalSize);
+		final long start = startPhase();
+		final Bitmap bitmap = Bitmap.createBitmap(width, height,
+				Bitmap.Config.ARGB_8888);
+		mSnapshotCanvas.setBitmap(bitmap);
+		for (int i = 0; i < group.views.length; ++i) {
+			final View view = group.views[i];
+			mSnapshotCanvas.save();
+			mSnapshotCanvas.translate(
+					(view.getLeft() - group.startRect.left) - view.getScrollX(),
+					(view.getTop() - group.startRect.top) - view.getScrollY());
+			view.draw(mSnapshotCanvas);
+			mSnapshotCanvas.restore();
 		}
+		mSnapshotCanvas.setBitmap(null);
+		endPhase(OnPerformanceListener.PHASE_SNAPSHOT, start);
 
-		return cellCount == mHoveredCells.size();
+		mSnapshotBytes += bitmap.getByteCount();
+		if (GridTrace.ENABLED) {
+			GridTrace.setCounter(GridTrace.COUNTER_SNAPSHOT_BYTES,
+					mSnapshotBytes);
+		}
+		return new BitmapDrawable(getResources(), bitmap);
 	}
 
-	private boolean requestHoverRect(Rect rect) {
-		rect.setEmpty();
-		for (final Cell cell : mHoveredCells) {
-			if (!rect.isEmpty()) {
-				rect.union(cell.rect);
-			} else {
-				rect.set(cell.rect);
+	/**
+	 * Resolves the area hovered by the bounds of the group once, the
+	 * footprint is the member cells moved to its left-top cell.
+	 */
+	private void requestGroupHover() {
+		final long start = startPhase();
+		final Group group = mDragGroup;
+		mHoverComplete = mGrid.findHoveredCells(group.currentRect.left,
+				group.currentRect.top, group.currentRect.right,
+				group.currentRect.bottom, group.horizontalSize,
+				group.verticalSize, mHoveredArea);
+		if (mReorderGridStale) {
+			syncReorderGrid();
+		}
+		mGroupDropAllowed = mHoverComplete
+				&& isGroupFree(mReorderGrid, mHoveredArea.column,
+						mHoveredArea.row);
+		endPhase(OnPerformanceListener.PHASE_HOVER, start);
+		if (mDebugOverlay != null) {
+			mDebugOverlay.onHover(mGrid, mHoveredArea);
+		}
+	}
+
+	private boolean isGroupFree(GridModel grid, int column, int row) {
+		final Group group = mDragGroup;
+		for (int i = 0; i < group.views.length; ++i) {
+			if (!grid.isFree(column + group.columns[i], row + group.rows[i],
+					group.horizontalSizes[i], group.verticalSizes[i],
+					GridModel.FREE)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Moves every child under the group footprint with a single plan, solved
+	 * against the occupancy with the footprint blocked.
+	 */
+	private void requestGroupReorder() {
+		if (!mHoverComplete) {
+			return;
+		}
+		final long start = startPhase();
+		final Group group = mDragGroup;
+		requestOccupancy(null, null);
+
+		final List<View> displaced = new ArrayList<View>();
+		for (int i = 0; i < group.views.length; ++i) {
+			final int count = mGrid.collectOwners(mHoveredArea.column
+					+ group.columns[i], mHoveredArea.row + group.rows[i],
+					group.horizontalSizes[i], group.verticalSizes[i],
+					GridModel.FREE, mTmpOwners);
+			for (int j = 0; j < count; ++j) {
+				final View child = getChildAt(mTmpOwners[j] - 1);
+				if (!displaced.contains(child)) {
+					displaced.add(child);
+				}
+			}
+		}
+		if (displaced.isEmpty()) {
+			endPhase(OnPerformanceListener.PHASE_REORDER, start);
+			return;
+		}
+
+		for (int i = 0; i < group.views.length; ++i) {
+			mGrid.occupy(mHoveredArea.column + group.columns[i],
+					mHoveredArea.row + group.rows[i],
+					group.horizontalSizes[i], group.verticalSizes[i],
+					GridModel.BLOCKED);
+		}
+
+		final PlacementSolver.Plan plan = new PlacementSolver.Plan(
+				++mReorderGeneration, displaced.size());
+		for (int i = 0; i < displaced.size(); ++i) {
+			final View child = displaced.get(i);
+			final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+			plan.add(child, indexOfChild(child) + 1, GridModel.NO_CELL,
+					lp.mHorizontalSize, lp.mVerticalSize);
+		}
+		if (mPlacementSolver != null) {
+			mPlacementSolver.submit(mGrid, plan, mReorderCallback);
+		} else {
+			PlacementSolver.solve(mGrid, plan, null);
+			applyReorder(plan);
+		}
+		endPhase(OnPerformanceListener.PHASE_REORDER, start);
+	}
+
+	private void dropGroup(float x, float y) {
+		final Group group = mDragGroup;
+		if (mReorderGridStale) {
+			syncReorderGrid();
+		}
+		final int column;
+		final int row;
+		if (mHoverComplete
+				&& isGroupFree(mReorderGrid, mHoveredArea.column,
+						mHoveredArea.row)) {
+			column = mHoveredArea.column;
+			row = mHoveredArea.row;
+		} else {
+			// the grid might have shrunk under the start of the group
+			final int cell = mGrid.findCellByPosition(group.startRect.left,
+					group.startRect.top);
+			column = cell != GridModel.NO_CELL ? mGrid.getColumn(cell)
+					: GridModel.NO_CELL;
+			row = cell != GridModel.NO_CELL ? mGrid.getRow(cell)
+					: GridModel.NO_CELL;
+		}
+
+		// members which don't fit at their cells any more go to the first
+		// free ones
+		requestOccupancy(null, null);
+		for (int i = 0; i < group.views.length; ++i) {
+			final View view = group.views[i];
+			final LayoutParams lp = (LayoutParams) view.getLayoutParams();
+			final int drawnLeft = (group.currentRect.left + view.getLeft())
+					- group.startRect.left;
+			final int drawnTop = (group.currentRect.top + view.getTop())
+					- group.startRect.top;
+
+			int index = mGrid.indexOf(column + group.columns[i], row
+					+ group.rows[i]);
+			if ((column == GridModel.NO_CELL)
+					|| !mGrid.isFree(column + group.columns[i], row
+							+ group.rows[i], lp.mHorizontalSize,
+							lp.mVerticalSize, GridModel.FREE)) {
+				index = mGrid.findFreeCell(lp.mHorizontalSize,
+						lp.mVerticalSize, GridModel.FREE);
+			}
+			if (index != GridModel.NO_CELL) {
+				lp.mX = mGrid.getCellLeft(mGrid.getColumn(index));
+				lp.mY = mGrid.getCellTop(mGrid.getRow(index));
+				mGrid.occupy(mGrid.getColumn(index), mGrid.getRow(index),
+						lp.mHorizontalSize, lp.mVerticalSize, GridModel.BLOCKED);
+			}
+			animateMove(view, drawnLeft - (lp.mX + lp.leftMargin), drawnTop
+					- (lp.mY + lp.topMargin));
+			view.requestLayout();
+		}
+
+		releaseSnapshot(group.drawable);
+		mDragGroup = null;
+		mNodes.clear();
+		if (GridTrace.ENABLED) {
+			GridTrace.setCounter(GridTrace.COUNTER_DISPLACED_NODES, 0);
+		}
+
+		mEventLog.log(GridEventLog.TYPE_DROP, x, y,
+				column != GridModel.NO_CELL ? mGrid.indexOf(column, row)
+						: GridModel.NO_CELL, group.view.getId());
+		finishDragSession(group.view);
+		if (mDragListener != null) {
+			mDragListener.onDrop(group.view, this);
+		}
+		requestLayout();
+		invalidate();
+	}
+
+	public void removeRootView() {
+		if (mRootView != null) {
+			super.removeView(mRootView);
+		}
+	}
+
+	private Rect requestCurrentRect(Rect outRect, View view) {
+		if (outRect == null) {
+			outRect = new Rect();
+		}
+
+		outRect.left = view.getLeft();
+		outRect.top = view.getTop();
+		outRect.right = view.getRight();
+		outRect.bottom = view.getBottom();
+
+		return outRect;
+	}
+
+	private void requestDrop(Node node) {
+		final long start = startPhase();
+		final boolean hoverComplete = requestHoveredCells(node);
+		requestOccupancy(node.view, null);
+
+		final LayoutParams lp = (LayoutParams) node.view.getLayoutParams();
+		final int cell = mGrid.findCellByPosition(lp.mX, lp.mY);
+		final int index = mGrid.resolveDrop(mHoveredArea, hoverComplete,
+				cell != GridModel.NO_CELL ? mGrid.getColumn(cell) : UNKNOWN,
+				cell != GridModel.NO_CELL ? mGrid.getRow(cell) : UNKNOWN,
+				lp.mHorizontalSize, lp.mVerticalSize, GridModel.FREE);
+		if (index != GridModel.NO_CELL) {
+			node.startRect.offsetTo(mGrid.getCellLeft(mGrid.getColumn(index)),
+					mGrid.getCellTop(mGrid.getRow(index)));
+		}
+		endPhase(OnPerformanceListener.PHASE_DROP, start);
+	}
+
+	/**
+	 * Fills the grid model with the cells occupied by children, the excluded
+	 * views are left out. A child owns its cells with its index + 1.
+	 */
+	private void requestOccupancy(View excluded, View otherExcluded) {
+		final long start = startPhase();
+		mGrid.clear();
+		final int count = getChildCount();
+		if (mTmpOwners.length < count) {
+			mTmpOwners = new int[count];
+		}
+		for (int i = 0; i < count; ++i) {
+			final View child = getChildAt(i);
+			if ((child == mRootView) || (child == excluded)
+					|| (child == otherExcluded)
+					|| ((mDragGroup != null) && mDragGroup.contains(child))) {
+				continue;
+			}
+
+			final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+			if ((lp.mX == UNKNOWN) || (lp.mY == UNKNOWN)) {
+				continue;
 			}
+
+			requestPreferredRect(mTmpRect, child);
+			mGrid.occupyRect(mTmpRect.left, mTmpRect.top, mTmpRect.right,
+					mTmpRect.bottom, i + 1);
 		}
-		return !mHoveredCells.isEmpty() && !rect.isEmpty();
+		endPhase(OnPerformanceListener.PHASE_OCCUPANCY, start);
+	}
+
+	private boolean requestHoveredCells(Node node) {
+		if (GridTrace.ENABLED) {
+			GridTrace.beginSection(GridTrace.SECTION_HOVER);
+		}
+		final long start = startPhase();
+		final LayoutParams lp = (LayoutParams) node.view.getLayoutParams();
+		mHoverComplete = mGrid.findHoveredCells(node.currentRect.left,
+				node.currentRect.top, node.currentRect.right,
+				node.currentRect.bottom, lp.mHorizontalSize,
+				lp.mVerticalSize, mHoveredArea);
+		endPhase(OnPerformanceListener.PHASE_HOVER, start);
+		if (mDebugOverlay != null) {
+			mDebugOverlay.onHover(mGrid, mHoveredArea);
+		}
+		if (GridTrace.ENABLED) {
+			GridTrace.setCounter(GridTrace.COUNTER_HOVERED_CELLS,
+					mHoveredArea.isEmpty() ? 0 : mHoveredArea.horizontalSize
+							* mHoveredArea.verticalSize);
+			GridTrace.endSection();
+		}
+		return mHoverComplete;
+	}
+
+	private boolean requestHoverRect(Rect rect) {
+		if (mHoveredArea.isEmpty()) {
+			rect.setEmpty();
+			return false;
+		}
+		rect.left = mGrid.getCellLeft(mHoveredArea.column);
+		rect.top = mGrid.getCellTop(mHoveredArea.row);
+		rect.right = mGrid.getCellLeft(mHoveredArea.column
+				+ mHoveredArea.horizontalSize);
+		rect.bottom = mGrid.getCellTop(mHoveredArea.row
+				+ mHoveredArea.verticalSize);
+		return true;
 	}
 
 	private Rect requestPreferredRect(Rect outRect, View view) {
@@ -1480,70 +3518,265 @@ public class DragGridLayout extends ViewGroup {
 		if (mDragNode == null){
 			return;
 		}
-		Set<Node> nodes = findNodesUnder(mDragNode, mHoveredCells);
+		if (GridTrace.ENABLED) {
+			GridTrace.beginSection(GridTrace.SECTION_REORDER);
+		}
+		final long start = startPhase();
+		Set<Node> nodes = (mDropMode == DROP_MODE_SWAP) && requestSwap() ? Collections
+				.<Node> emptySet() : findNodesUnder(mDragNode, mHoveredArea);
+		if ((mPlacementSolver != null) && !nodes.isEmpty()) {
+			submitReorder(nodes);
+			nodes = Collections.emptySet();
+		}
 
 		for (final Node childNode : nodes) {
-			requestFreeCellRegion(childNode.view, mDragNode.view);
-			mFreeCellsRegion.op(mDragNode.currentRect, Op.DIFFERENCE);
+			requestOccupancy(childNode.view, mDragNode.view);
+			mGrid.occupyRect(mDragNode.currentRect.left,
+					mDragNode.currentRect.top, mDragNode.currentRect.right,
+					mDragNode.currentRect.bottom, GridModel.BLOCKED);
 
 			final LayoutParams lp = (LayoutParams) childNode.view.getLayoutParams();
-			final LayoutParams newLp = validateLayoutParams(generateLayoutParams(lp), mFreeCellsRegion);
+			final LayoutParams newLp = validateLayoutParams(generateLayoutParams(lp), mGrid);
 			if ((lp.mX == newLp.mX) && (lp.mY == newLp.mY)){
 				continue;
 			}
-			childNode.view.setLayoutParams(newLp);
+			moveReorderedNode(childNode, newLp);
+		}
+
+		if (!nodes.isEmpty()) {
+			requestOccupancy(null, null);
+			requestLayout();
+			invalidate();
+		}
+		endPhase(OnPerformanceListener.PHASE_REORDER, start);
+		if (GridTrace.ENABLED) {
+			GridTrace.setCounter(GridTrace.COUNTER_DISPLACED_NODES,
+					mNodes.size());
+			GridTrace.endSection();
+		}
+	}
+
+	/**
+	 * Moves the only child covering the hovered area to the origin of the
+	 * dragged view when they have the same span, without any free cell
+	 * search.
+	 *
+	 * @return false if the hovered area can't be swapped
+	 */
+	private boolean requestSwap() {
+		if (!mHoverComplete) {
+			return false;
+		}
 
-			requestPreferredRect(childNode.currentRect, childNode.view);
+		requestOccupancy(mDragNode.view, null);
+		final int count = mGrid.collectOwners(mHoveredArea.column,
+				mHoveredArea.row, mHoveredArea.horizontalSize,
+				mHoveredArea.verticalSize, GridModel.FREE, mTmpOwners);
+		if (count != 1) {
+			return false;
+		}
 
-			final AnimationSet animation = new AnimationSet(true);
-			animation.addAnimation(new TranslateAnimation(
-					childNode.startRect.left - childNode.currentRect.left, 0,
-					childNode.startRect.top - childNode.currentRect.top, 0));
+		// the same span at the left-top of the area covers it exactly
+		final int owner = mTmpOwners[0];
+		final View child = getChildAt(owner - 1);
+		final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+		final LayoutParams dragLp = (LayoutParams) mDragNode.view
+				.getLayoutParams();
+		final int origin = mGrid.findCellByPosition(dragLp.mX, dragLp.mY);
+		if ((lp.mHorizontalSize != dragLp.mHorizontalSize)
+				|| (lp.mVerticalSize != dragLp.mVerticalSize)
+				|| (lp.mX != mGrid.getCellLeft(mHoveredArea.column))
+				|| (lp.mY != mGrid.getCellTop(mHoveredArea.row))
+				|| (origin == GridModel.NO_CELL)
+				|| !mGrid.isFree(mGrid.getColumn(origin), mGrid.getRow(origin),
+						lp.mHorizontalSize, lp.mVerticalSize, owner)) {
+			return false;
+		}
 
-			animation.setDuration(DURATION / 2);
-			animation.setAnimationListener(new AbstractAnimationListener() {
-				@Override
-				public void onAnimationEnd(final Animation a) {
-					childNode.view.setAnimation(null);
+		final LayoutParams newLp = generateLayoutParams(lp);
+		newLp.mX = dragLp.mX;
+		newLp.mY = dragLp.mY;
+		moveReorderedNode(new Node(child, requestCurrentRect(mTmpRect, child),
+				null), newLp);
+
+		mGrid.occupy(mHoveredArea.column, mHoveredArea.row,
+				mHoveredArea.horizontalSize, mHoveredArea.verticalSize,
+				GridModel.BLOCKED);
+		mGrid.occupy(mGrid.getColumn(origin), mGrid.getRow(origin),
+				lp.mHorizontalSize, lp.mVerticalSize, owner);
+		requestLayout();
+		invalidate();
+		return true;
+	}
 
-					requestLayout();
-					invalidate();
-				}
-			});
-			childNode.view.setAnimation(animation);
+	private void moveReorderedNode(final Node childNode, LayoutParams newLp) {
+		requestPreferredRect(mTmpRect, childNode.view);
+		mReorderGrid.occupyRect(mTmpRect.left, mTmpRect.top, mTmpRect.right,
+				mTmpRect.bottom, GridModel.FREE);
+		childNode.owner = indexOfChild(childNode.view) + 1;
+		childNode.view.setLayoutParams(newLp);
+		mEventLog.log(GridEventLog.TYPE_REORDER, newLp.mX, newLp.mY,
+				mGrid.findCellByPosition(newLp.mX, newLp.mY),
+				childNode.view.getId());
+
+		requestPreferredRect(childNode.currentRect, childNode.view);
+		mReorderGrid.occupyRect(childNode.currentRect.left,
+				childNode.currentRect.top, childNode.currentRect.right,
+				childNode.currentRect.bottom, childNode.owner);
+
+		final AnimationSet animation = new AnimationSet(true);
+		animation.addAnimation(new TranslateAnimation(
+				childNode.startRect.left - childNode.currentRect.left, 0,
+				childNode.startRect.top - childNode.currentRect.top, 0));
+
+		animation.setDuration(DURATION / 2);
+		animation.setAnimationListener(new AbstractAnimationListener() {
+			@Override
+			public void onAnimationEnd(final Animation a) {
+				childNode.view.setAnimation(null);
+
+				requestLayout();
+				invalidate();
+			}
+		});
+		childNode.view.setAnimation(animation);
+		if (!mNodes.contains(childNode)) {
 			mNodes.add(childNode);
 		}
+		if (mDragSessionActive) {
+			mDragStats.onReorder();
+		}
+	}
 
-		if (!nodes.isEmpty()) {
-			requestFreeCellRegion();
+	// mGrid holds the occupancy without the dragged view
+	private void submitReorder(Set<Node> nodes) {
+		mGrid.occupyRect(mDragNode.currentRect.left,
+				mDragNode.currentRect.top, mDragNode.currentRect.right,
+				mDragNode.currentRect.bottom, GridModel.BLOCKED);
+
+		final PlacementSolver.Plan plan = new PlacementSolver.Plan(
+				++mReorderGeneration, nodes.size());
+		for (final Node childNode : nodes) {
+			final LayoutParams lp = (LayoutParams) childNode.view
+					.getLayoutParams();
+			plan.add(childNode.view, indexOfChild(childNode.view) + 1,
+					mGrid.findCellByPosition(lp.mX, lp.mY),
+					lp.mHorizontalSize, lp.mVerticalSize);
+		}
+		mPlacementSolver.submit(mGrid, plan, mReorderCallback);
+	}
+
+	// the plan was solved on a copy taken at submit time, children might
+	// have been added, removed or moved since, so every cell is checked
+	// against the live occupancy before it is applied
+	private void applyReorder(PlacementSolver.Plan plan) {
+		requestOccupancy(mDragNode != null ? mDragNode.view : null, null);
+		final Rect draggedRect = mDragNode != null ? mDragNode.currentRect
+				: mDragGroup.currentRect;
+		mGrid.occupyRect(draggedRect.left, draggedRect.top,
+				draggedRect.right, draggedRect.bottom, GridModel.BLOCKED);
+		for (int i = 0; i < plan.size; ++i) {
+			if (plan.views[i].getParent() == this) {
+				mGrid.release(indexOfChild(plan.views[i]) + 1);
+			}
+		}
+
+		boolean moved = false;
+		for (int i = 0; i < plan.size; ++i) {
+			final View view = plan.views[i];
+			if (view.getParent() != this) {
+				continue;
+			}
+
+			final int owner = indexOfChild(view) + 1;
+			final int cell = plan.cells[i];
+			final LayoutParams lp = (LayoutParams) view.getLayoutParams();
+			if ((cell == GridModel.NO_CELL)
+					|| (lp.mHorizontalSize != plan.horizontalSizes[i])
+					|| (lp.mVerticalSize != plan.verticalSizes[i])
+					|| !mGrid.isFree(mGrid.getColumn(cell), mGrid.getRow(cell),
+							lp.mHorizontalSize, lp.mVerticalSize, GridModel.FREE)) {
+				// stays where it is
+				requestPreferredRect(mTmpRect, view);
+				mGrid.occupyRect(mTmpRect.left, mTmpRect.top, mTmpRect.right,
+						mTmpRect.bottom, owner);
+				continue;
+			}
+			mGrid.occupy(mGrid.getColumn(cell), mGrid.getRow(cell),
+					lp.mHorizontalSize, lp.mVerticalSize, owner);
+
+			final LayoutParams newLp = generateLayoutParams(lp);
+			newLp.mX = mGrid.getCellLeft(mGrid.getColumn(cell));
+			newLp.mY = mGrid.getCellTop(mGrid.getRow(cell));
+			if ((lp.mX == newLp.mX) && (lp.mY == newLp.mY)) {
+				continue;
+			}
+			moveReorderedNode(
+					new Node(view, requestCurrentRect(mTmpRect, view), null),
+					newLp);
+			moved = true;
+		}
+
+		requestOccupancy(null, null);
+		if (moved) {
 			requestLayout();
 			invalidate();
 		}
+		if (GridTrace.ENABLED) {
+			GridTrace.setCounter(GridTrace.COUNTER_DISPLACED_NODES,
+					mNodes.size());
+		}
+	}
+
+	void performLongHover() {
+		mHandler.removeMessages(LONGHOVER_MESSAGE);
+		if (mDragGroup != null) {
+			requestGroupReorder();
+		} else {
+			requestReorder();
+		}
+		mLoongHoveredRequested = false;
+	}
+
+	boolean isLongHoverPending() {
+		return mLoongHoveredRequested;
+	}
+
+	// views moved aside by the running drag that a revert would move back
+	int getDisplacedCount() {
+		return mNodes.size();
 	}
 
 	private void requestReorderRevert() {
+		if (mNodes.isEmpty()) {
+			return;
+		}
+
+		if (mReorderGridStale) {
+			syncReorderGrid();
+		}
+
 		boolean needInvalidate = false;
-		for (final Iterator<Node> it = mNodes.iterator(); it.hasNext();) {
-			final Node node = it.next();
-			if (mDragNode != null){
-				requestFreeCellRegion(mDragNode.view);
-			} else {
-				requestFreeCellRegion();
-			}
-			for (Cell cell : mHoveredCells) {
-				mFreeCellsRegion.op(cell.rect, Op.DIFFERENCE);
-			}
-			
-			mTmpRegion.set(mFreeCellsRegion);
-			mTmpRegion.op(node.startRect, Op.INTERSECT);
-			mTmpRegion.getBounds(mTmpRect);
-			if ((mTmpRect.width() == node.startRect.width())
-					&& (mTmpRect.height() == node.startRect.height())) {
-				it.remove();
+		// indexed, an iterator would be allocated on every move of the drag
+		for (int i = mNodes.size() - 1; i >= 0; --i) {
+			final Node node = mNodes.get(i);
+			if (mReorderGrid.isRectFree(node.startRect.left,
+					node.startRect.top, node.startRect.right,
+					node.startRect.bottom, node.owner, mHoveredArea)) {
+				mNodes.remove(i);
+				mReorderGrid.occupyRect(node.currentRect.left,
+						node.currentRect.top, node.currentRect.right,
+						node.currentRect.bottom, GridModel.FREE);
+				mReorderGrid.occupyRect(node.startRect.left,
+						node.startRect.top, node.startRect.right,
+						node.startRect.bottom, node.owner);
 
 				LayoutParams lp = (LayoutParams) node.view.getLayoutParams();
 				lp.mX = node.startRect.left - lp.leftMargin;
 				lp.mY = node.startRect.top - lp.topMargin;
+				mEventLog.log(GridEventLog.TYPE_REVERT, lp.mX, lp.mY,
+						mGrid.findCellByPosition(lp.mX, lp.mY),
+						node.view.getId());
 
 				final AnimationSet animation = new AnimationSet(true);
 				animation.addAnimation(new TranslateAnimation(
@@ -1566,10 +3799,29 @@ public class DragGridLayout extends ViewGroup {
 		}
 
 		if (needInvalidate) {
+			if (GridTrace.ENABLED) {
+				GridTrace.setCounter(GridTrace.COUNTER_DISPLACED_NODES,
+						mNodes.size());
+			}
 			invalidate();
 		}
 	}
 
+	/**
+	 * Takes the occupancy without the dragged view as the base tentative
+	 * reorder moves are recorded against, so a revert checks and restores
+	 * only the moved nodes.
+	 */
+	private void syncReorderGrid() {
+		requestOccupancy(mDragNode != null ? mDragNode.view : null, null);
+		mReorderGrid.set(mGrid);
+		for (int i = 0; i < mNodes.size(); ++i) {
+			final Node node = mNodes.get(i);
+			node.owner = indexOfChild(node.view) + 1;
+		}
+		mReorderGridStale = false;
+	}
+
 	private void resolveCell(Cell[] curr, Cell[] prev, int offsetX,
 			int offsetY, List<Cell> cells) {
 		for (int i = 0; i < curr.length; ++i) {
@@ -1625,19 +3877,35 @@ public class DragGridLayout extends ViewGroup {
 
 	public void setCellImage(Drawable cellDrawable) {
 		this.mCellDrawable = cellDrawable;
+		invalidateGridLayer();
 	}
 
 	public void setCellImage(int cellRes) {
 		setCellImage(getResources().getDrawable(cellRes));
 	}
 
+	/**
+	 * Turns the diagnostics overlay on or off.
+	 */
 	public void setDebugMode(boolean debugMode) {
 		if (this.mDebugMode != debugMode) {
 			this.mDebugMode = debugMode;
+			updateDebugOverlay();
 			invalidate();
 		}
 	}
 
+	private void updateDebugOverlay() {
+		if (mDebugMode && (mDebugOverlay == null)) {
+			mDebugOverlay = new DebugOverlay();
+			mDebugOverlay.resizeHeat(mGrid.getCellCount());
+			mDebugOverlay.start();
+		} else if (!mDebugMode && (mDebugOverlay != null)) {
+			mDebugOverlay.stop();
+			mDebugOverlay = null;
+		}
+	}
+
 	public void setDragListener(OnViewDragListener dragListener) {
 		this.mDragListener = dragListener;
 	}
@@ -1646,18 +3914,54 @@ public class DragGridLayout extends ViewGroup {
 		this.mScaleFactor = scale;
 	}
 
+	public int getDropMode() {
+		return mDropMode;
+	}
+
+	/**
+	 * @param dropMode
+	 *            {@link #DROP_MODE_REORDER} or {@link #DROP_MODE_SWAP}
+	 */
+	public void setDropMode(int dropMode) {
+		mDropMode = dropMode;
+	}
+
+	public int getSnapshotFlags() {
+		return mSnapshotFlags;
+	}
+
+	/**
+	 * Sets how snapshots are taken, a combination of
+	 * {@link #SNAPSHOT_DOWNSCALE}, {@link #SNAPSHOT_OPAQUE_RGB_565} and
+	 * {@link #SNAPSHOT_HARDWARE}. 0 gives full size ARGB_8888 snapshots.
+	 */
+	public void setSnapshotFlags(int flags) {
+		if (mSnapshotFlags != flags) {
+			mSnapshotFlags = flags;
+			mSnapshotCache.evictAll();
+		}
+	}
+
 	public void setEditMode(boolean value) {
 		if (this.mEditMode == value) {
 			return;
 		}
 
 		mEditMode = value;
-		if (mRootView != null) {
-			if (mEditMode) {
-				mRootViewDrawable = DragGridLayout
-						.createDrawingCache(mRootView);
-			} else if (mRootViewDrawable != null) {
-				mRootViewDrawable.getBitmap().recycle();
+		mEventLog.log(GridEventLog.TYPE_EDIT_MODE, value ? 1 : 0, 0,
+				GridModel.NO_CELL, View.NO_ID);
+		mGridLayerDirty = true;
+		if (mEditMode) {
+			// the root view is drawn live until its snapshot is prewarmed
+			mSnapshotScheduler.start();
+		} else {
+			clearSelection();
+			mSnapshotScheduler.stop();
+			cancelSnapshotRefresh();
+			releaseGridLayer();
+			if (mRootViewDrawable != null) {
+				putCachedSnapshot(mRootView, mRootViewDrawable,
+						mRootSnapshotDirty);
 				mRootViewDrawable = null;
 			}
 		}
@@ -1685,6 +3989,28 @@ public class DragGridLayout extends ViewGroup {
 		this.mRemoveListener = removeListener;
 	}
 
+	public void setResizeListener(OnViewResizeListener resizeListener) {
+		this.mResizeListener = resizeListener;
+	}
+
+	public Drawable getResizeHandleDrawable() {
+		return mResizeHandleDrawable;
+	}
+
+	/**
+	 * Sets the handle drawn at the right-bottom corner of children in edit
+	 * mode, dragging it changes the spans of the child. Null (the default)
+	 * turns resizing off.
+	 */
+	public void setResizeHandle(Drawable handleDrawable) {
+		mResizeHandleDrawable = handleDrawable;
+		invalidate();
+	}
+
+	public void setResizeHandle(int handleRes) {
+		setResizeHandle(getResources().getDrawable(handleRes));
+	}
+
 	public void setRootView(View view) {
 		if (view != mRootView) {
 			removeRootView();
@@ -1715,6 +4041,10 @@ public class DragGridLayout extends ViewGroup {
 	}
 
 	private boolean validateChildrenLayoutParams() {
+		if (mPlacementSolver != null) {
+			submitPlacement();
+			return false;
+		}
 		boolean needRequestLayout = false;
 		int childCount = getChildCount();
 		for (int i = 0; i < childCount; ++i) {
@@ -1733,9 +4063,282 @@ public class DragGridLayout extends ViewGroup {
 		return needRequestLayout;
 	}
 
+	public void submitLayout(List<Placement> placements) {
+		submitLayout(placements, null);
+	}
+
+	/**
+	 * Applies a new arrangement diffed against the current children by id:
+	 * children without a placement are removed, moved ones are animated to
+	 * their new cells, missing ones are created by the factory (skipped if
+	 * it's null). Placements are applied in order, the ones which don't fit
+	 * go to the first free cell. The root view and the dragged view are left
+	 * as they are. Everything is applied with a single layout pass, before
+	 * the grid is resolved the arrangement is kept until it is.
+	 */
+	public void submitLayout(List<Placement> placements, ViewFactory factory) {
+		if (mGrid.isEmpty()) {
+			mPendingPlacements = new ArrayList<Placement>(placements);
+			mPendingViewFactory = factory;
+			requestLayout();
+			return;
+		}
+		mPendingPlacements = null;
+		mPendingViewFactory = null;
+
+		final int placementCount = placements.size();
+		final SparseArray<Placement> placementsById = new SparseArray<Placement>(
+				placementCount);
+		for (int i = 0; i < placementCount; ++i) {
+			final Placement placement = placements.get(i);
+			placementsById.put(placement.id, placement);
+		}
+
+		for (int i = getChildCount() - 1; i >= 0; --i) {
+			final View child = getChildAt(i);
+			if ((child != mRootView) && !isDragged(child)
+					&& (placementsById.get(child.getId()) == null)) {
+				child.clearAnimation();
+				removeViewInLayout(child);
+			}
+		}
+
+		mGrid.clear();
+		if (mDragNode != null) {
+			requestPreferredRect(mTmpRect, mDragNode.view);
+			mGrid.occupyRect(mTmpRect.left, mTmpRect.top, mTmpRect.right,
+					mTmpRect.bottom, GridModel.BLOCKED);
+		}
+
+		for (int i = 0; i < placementCount; ++i) {
+			final Placement placement = placements.get(i);
+			if (placementsById.get(placement.id) != placement) {
+				// the last placement of an id wins
+				continue;
+			}
+			View child = findChildById(placement.id);
+			if ((child != null) && ((child == mRootView) || isDragged(child))) {
+				continue;
+			}
+			final boolean added = child == null;
+			if (added) {
+				if ((factory == null) || (placement.id == mRootViewId)) {
+					continue;
+				}
+				child = factory.createView(placement, this);
+				if (child == null) {
+					continue;
+				}
+				child.setId(placement.id);
+			}
+
+			final LayoutParams lp = checkLayoutParams(child.getLayoutParams()) ? (LayoutParams) child
+					.getLayoutParams() : generateLayoutParams(child
+							.getLayoutParams());
+			final int oldX = lp.mX;
+			final int oldY = lp.mY;
+			lp.mHorizontalSize = placement.horizontalSize;
+			lp.mVerticalSize = placement.verticalSize;
+
+			int column = placement.column;
+			int row = placement.row;
+			if (!mGrid.isFree(column, row, lp.mHorizontalSize,
+					lp.mVerticalSize, GridModel.FREE)) {
+				final int index = mGrid.findFreeCell(lp.mHorizontalSize,
+						lp.mVerticalSize, GridModel.FREE);
+				column = index != GridModel.NO_CELL ? mGrid.getColumn(index)
+						: UNKNOWN;
+				row = index != GridModel.NO_CELL ? mGrid.getRow(index)
+						: UNKNOWN;
+			}
+			if (column != UNKNOWN) {
+				lp.mX = mGrid.getCellLeft(column);
+				lp.mY = mGrid.getCellTop(row);
+				mGrid.occupy(column, row, lp.mHorizontalSize,
+						lp.mVerticalSize, GridModel.BLOCKED);
+			}
+
+			if (added) {
+				addViewInLayout(child, -1, lp, true);
+			} else if (((oldX != lp.mX) || (oldY != lp.mY))
+					&& (child.getWidth() > 0) && (lp.mX != UNKNOWN)) {
+				animateMove(child, child.getLeft() - (lp.mX + lp.leftMargin),
+						child.getTop() - (lp.mY + lp.topMargin));
+			}
+		}
+
+		mReorderGridStale = true;
+		requestLayout();
+		invalidate();
+	}
+
+	private void animateMove(final View child, int dx, int dy) {
+		final Animation animation = new TranslateAnimation(dx, 0, dy, 0);
+		animation.setDuration(DURATION);
+		animation.setAnimationListener(new AbstractAnimationListener() {
+			@Override
+			public void onAnimationEnd(Animation a) {
+				child.setAnimation(null);
+				invalidate();
+			}
+		});
+		child.setAnimation(animation);
+	}
+
+	private boolean isDragged(View child) {
+		return ((mDragNode != null) && (mDragNode.view == child))
+				|| ((mDragGroup != null) && mDragGroup.contains(child));
+	}
+
+	private void submitPlacement() {
+		final int count = getChildCount();
+		PlacementSolver.Plan plan = null;
+		for (int i = 0; i < count; ++i) {
+			final View child = getChildAt(i);
+			final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+			if ((child == mRootView) || ((lp.mX != UNKNOWN) && (lp.mY != UNKNOWN))) {
+				continue;
+			}
+			if (plan == null) {
+				plan = new PlacementSolver.Plan(++mPlacementGeneration, count);
+			}
+			plan.add(child, GridModel.FREE, GridModel.NO_CELL,
+					lp.mHorizontalSize, lp.mVerticalSize);
+		}
+
+		if (plan != null) {
+			requestOccupancy(null, null);
+			mPlacementSolver.submit(mGrid, plan, mPlacementCallback);
+		}
+	}
+
+	// cells solved on the worker are checked against the current occupancy,
+	// children added meanwhile may have taken them
+	private void applyPlacement(PlacementSolver.Plan plan) {
+		requestOccupancy(null, null);
+		boolean placed = false;
+		for (int i = 0; i < plan.size; ++i) {
+			final View child = plan.views[i];
+			final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+			if ((child.getParent() != this)
+					|| ((lp.mX != UNKNOWN) && (lp.mY != UNKNOWN))) {
+				continue;
+			}
+
+			final int cell = plan.cells[i];
+			if ((cell != GridModel.NO_CELL)
+					&& (lp.mHorizontalSize == plan.horizontalSizes[i])
+					&& (lp.mVerticalSize == plan.verticalSizes[i])
+					&& mGrid.isFree(mGrid.getColumn(cell), mGrid.getRow(cell),
+							lp.mHorizontalSize, lp.mVerticalSize, GridModel.FREE)) {
+				lp.mX = mGrid.getCellLeft(mGrid.getColumn(cell));
+				lp.mY = mGrid.getCellTop(mGrid.getRow(cell));
+			} else {
+				validateLayoutParams(lp, mGrid);
+			}
+			requestPreferredRect(mTmpRect, child);
+			mGrid.occupyRect(mTmpRect.left, mTmpRect.top, mTmpRect.right,
+					mTmpRect.bottom, GridModel.BLOCKED);
+			child.requestLayout();
+			mReorderGridStale = true;
+			placed = true;
+		}
+
+		if (placed) {
+			requestLayout();
+			invalidate();
+		}
+	}
+
+	public Executor getPlacementExecutor() {
+		return mPlacementSolver != null ? mPlacementSolver.getExecutor() : null;
+	}
+
+	/**
+	 * Solves placement of new children and reorder plans on the given
+	 * executor and applies them on the UI thread, null (the default) solves
+	 * them synchronously. A {@link java.util.concurrent.ForkJoinPool} also
+	 * splits free cell searches over its workers on grids of at least
+	 * {@link org.androfarsh.grid.ParallelFirstFit#MIN_PARALLEL_CELLS} cells,
+	 * children land on the same cells either way. Smaller grids, a 64x36
+	 * one included, are searched serially on the executor thread.
+	 */
+	public void setPlacementExecutor(Executor executor) {
+		mPlacementSolver = executor != null ? new PlacementSolver(executor)
+				: null;
+		++mPlacementGeneration;
+		++mReorderGeneration;
+	}
+
+	public ConcurrentGridModel getModel() {
+		return mModel;
+	}
+
+	/**
+	 * Shows the arrangement of the given model, which can be changed from
+	 * any thread. Changes are applied on the next frame through
+	 * {@link #submitLayout(List, ViewFactory)}, so a burst of them costs a
+	 * single layout pass. Null detaches the current model and leaves the
+	 * children as they are.
+	 */
+	public void setModel(ConcurrentGridModel model, ViewFactory factory) {
+		if (mModel != null) {
+			mModel.setChangeListener(null);
+		}
+		mChoreographer.removeFrameCallback(mModelFrameCallback);
+
+		mModel = model;
+		mModelViewFactory = factory;
+		mModelVersion = -1;
+		if (model != null) {
+			model.setChangeListener(mModelChangeListener);
+			mChoreographer.postFrameCallback(mModelFrameCallback);
+		}
+	}
+
+	private void applyModel() {
+		if (mModel == null) {
+			return;
+		}
+		final ConcurrentGridModel.Snapshot snapshot = mModel.publish();
+		if (snapshot.version != mModelVersion) {
+			mModelVersion = snapshot.version;
+			submitLayout(snapshot.placements, mModelViewFactory);
+		}
+	}
+
 	public LayoutParams validateLayoutParams(ViewGroup.LayoutParams srcLp) {
-		requestFreeCellRegion();
-		return validateLayoutParams(srcLp, mFreeCellsRegion);
+		requestOccupancy(null, null);
+		return validateLayoutParams(srcLp, mGrid);
+	}
+
+	private LayoutParams validateLayoutParams(ViewGroup.LayoutParams srcLp,
+			GridModel grid) {
+		final LayoutParams lp;
+		if (checkLayoutParams(srcLp)) {
+			lp = (LayoutParams) srcLp;
+		} else {
+			lp = generateLayoutParams(srcLp);
+		}
+
+		if (grid.isEmpty()) {
+			return lp;
+		}
+
+		final int cell = grid.findCellByPosition(lp.mX, lp.mY);
+		if ((cell != GridModel.NO_CELL)
+				&& grid.isFree(grid.getColumn(cell), grid.getRow(cell),
+						lp.mHorizontalSize, lp.mVerticalSize, GridModel.FREE)) {
+			return lp;
+		}
+
+		final int index = grid.findFreeCell(lp.mHorizontalSize,
+				lp.mVerticalSize, GridModel.FREE);
+		if (index != GridModel.NO_CELL) {
+			lp.mX = grid.getCellLeft(grid.getColumn(index));
+			lp.mY = grid.getCellTop(grid.getRow(index));
+		}
+		return lp;
 	}
 
 	public LayoutParams validateLayoutParams(ViewGroup.LayoutParams srcLp,
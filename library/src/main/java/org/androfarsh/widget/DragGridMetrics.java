@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Authored by Anton Kuhlevskyi <anton.kuhleskiy@gmail.com>
+ */
+package org.androfarsh.widget;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.androfarsh.widget.DragGridLayout.OnPerformanceListener;
+
+/**
+ * Aggregates phase timings reported by {@link DragGridLayout} into per phase
+ * counters and power of two histograms.
+ * <p>
+ * Recording is lock free and doesn't allocate, so metrics can be collected
+ * on the UI thread and read from any other thread.
+ */
+public final class DragGridMetrics implements OnPerformanceListener {
+	/**
+	 * Bucket {@code i} counts samples in {@code [2^(i-1), 2^i)} nanoseconds,
+	 * the last bucket counts everything above.
+	 */
+	public static final int BUCKET_COUNT = 40;
+
+	private static final String[] PHASE_NAMES = new String[] { "hover",
+			"reorder", "drop", "measure", "layout", "draw", "resolveGrid",
+			"occupancy", "snapshot" };
+
+	private final AtomicLongArray mTotalNanos = new AtomicLongArray(
+			PHASE_COUNT);
+
+	private final AtomicLongArray mCounts = new AtomicLongArray(PHASE_COUNT);
+
+	private final AtomicLongArray mBuckets = new AtomicLongArray(PHASE_COUNT
+			* BUCKET_COUNT);
+
+	public static String getPhaseName(int phase) {
+		return PHASE_NAMES[phase];
+	}
+
+	static int getBucket(long nanos) {
+		return Math.min(BUCKET_COUNT - 1,
+				64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+	}
+
+	@Override
+	public void onPhase(int phase, long nanos) {
+		mTotalNanos.addAndGet(phase, nanos);
+		mCounts.incrementAndGet(phase);
+		mBuckets.incrementAndGet((phase * BUCKET_COUNT) + getBucket(nanos));
+	}
+
+	public long getTotalNanos(int phase) {
+		return mTotalNanos.get(phase);
+	}
+
+	public long getCount(int phase) {
+		return mCounts.get(phase);
+	}
+
+	public long getBucketCount(int phase, int bucket) {
+		return mBuckets.get((phase * BUCKET_COUNT) + bucket);
+	}
+
+	/**
+	 * @return upper bound of the histogram bucket holding the given
+	 *         percentile (0..100) of the phase samples, 0 if there are none
+	 */
+	public long getPercentileNanos(int phase, int percentile) {
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			total += getBucketCount(phase, i);
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		final long rank = ((total * percentile) + 99) / 100;
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			count += getBucketCount(phase, i);
+			if ((count >= rank) && (count > 0)) {
+				return i < 63 ? (1L << i) : Long.MAX_VALUE;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	public void reset() {
+		for (int i = 0; i < PHASE_COUNT; ++i) {
+			mTotalNanos.set(i, 0);
+			mCounts.set(i, 0);
+		}
+		for (int i = 0; i < mBuckets.length(); ++i) {
+			mBuckets.set(i, 0);
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < PHASE_COUNT; ++i) {
+			final long count = getCount(i);
+			builder.append(PHASE_NAMES[i]).append(": count=").append(count)
+					.append(" total=").append(getTotalNanos(i) / 1000)
+					.append("us avg=")
+					.append(count > 0 ? (getTotalNanos(i) / count) / 1000 : 0)
+					.append("us p90<=")
+					.append(getPercentileNanos(i, 90) / 1000).append("us\n");
+		}
+		return builder.toString();
+	}
+}
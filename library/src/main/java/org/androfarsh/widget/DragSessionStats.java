@@ -0,0 +1,178 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Authored by Anton Kuhlevskyi <anton.kuhleskiy@gmail.com>
+ */
+package org.androfarsh.widget;
+
+/**
+ * Smoothness summary of a single drag session of {@link DragGridLayout}.
+ * <p>
+ * Frame durations (from the frame time to the end of the layout's draw) and
+ * touch to frame latencies are kept in fixed size 1 ms histograms, so a
+ * session never allocates. The instance is reused between sessions, copy the
+ * values out if they are needed after
+ * {@link DragGridLayout.OnDragStatsListener#onDragStats} returns.
+ */
+public final class DragSessionStats {
+	/**
+	 * Histogram bucket {@code i} counts samples in {@code [i, i + 1)} ms, the
+	 * last bucket counts everything above.
+	 */
+	public static final int BUCKET_COUNT = 128;
+
+	public static final long DEFAULT_FRAME_BUDGET_NANOS = 16666667L;
+
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	private final int[] mFrameBuckets = new int[BUCKET_COUNT];
+
+	private final int[] mLatencyBuckets = new int[BUCKET_COUNT];
+
+	private long mFrameBudgetNanos = DEFAULT_FRAME_BUDGET_NANOS;
+
+	private int mFrameCount;
+
+	private int mFramesOverBudget;
+
+	private int mLatencyCount;
+
+	private int mReorderCount;
+
+	private int mLayoutCount;
+
+	private long mStartMillis;
+
+	private long mDurationMillis;
+
+	public void setFrameBudgetNanos(long frameBudgetNanos) {
+		mFrameBudgetNanos = frameBudgetNanos;
+	}
+
+	public long getFrameBudgetNanos() {
+		return mFrameBudgetNanos;
+	}
+
+	void start(long uptimeMillis) {
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			mFrameBuckets[i] = 0;
+			mLatencyBuckets[i] = 0;
+		}
+		mFrameCount = 0;
+		mFramesOverBudget = 0;
+		mLatencyCount = 0;
+		mReorderCount = 0;
+		mLayoutCount = 0;
+		mStartMillis = uptimeMillis;
+		mDurationMillis = 0;
+	}
+
+	void finish(long uptimeMillis) {
+		mDurationMillis = uptimeMillis - mStartMillis;
+	}
+
+	void onFrame(long nanos) {
+		++mFrameCount;
+		++mFrameBuckets[getBucket(nanos)];
+		if (nanos > mFrameBudgetNanos) {
+			++mFramesOverBudget;
+		}
+	}
+
+	void onTouchToFrame(long nanos) {
+		++mLatencyCount;
+		++mLatencyBuckets[getBucket(nanos)];
+	}
+
+	void onReorder() {
+		++mReorderCount;
+	}
+
+	void onLayout() {
+		++mLayoutCount;
+	}
+
+	private static int getBucket(long nanos) {
+		return (int) Math.max(0,
+				Math.min(BUCKET_COUNT - 1, nanos / NANOS_PER_MILLI));
+	}
+
+	private static int getPercentile(int[] buckets, int count, int percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, ((long) count * percentile + 99) / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			seen += buckets[i];
+			if (seen >= rank) {
+				return i + 1;
+			}
+		}
+		return BUCKET_COUNT;
+	}
+
+	public int getFrameCount() {
+		return mFrameCount;
+	}
+
+	public int getFramesOverBudget() {
+		return mFramesOverBudget;
+	}
+
+	/**
+	 * @return upper bound in ms of the given percentile (0..100) of frame
+	 *         durations
+	 */
+	public int getFrameDurationPercentileMillis(int percentile) {
+		return getPercentile(mFrameBuckets, mFrameCount, percentile);
+	}
+
+	/**
+	 * @return upper bound in ms of the given percentile (0..100) of the time
+	 *         between a move event and the end of the frame showing it
+	 */
+	public int getTouchToFramePercentileMillis(int percentile) {
+		return getPercentile(mLatencyBuckets, mLatencyCount, percentile);
+	}
+
+	/**
+	 * @return number of widgets moved out of the way during the session
+	 */
+	public int getReorderCount() {
+		return mReorderCount;
+	}
+
+	/**
+	 * @return number of layout passes of the grid during the session
+	 */
+	public int getLayoutCount() {
+		return mLayoutCount;
+	}
+
+	public long getDurationMillis() {
+		return mDurationMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "frames=" + mFrameCount + " p50="
+				+ getFrameDurationPercentileMillis(50) + "ms p90="
+				+ getFrameDurationPercentileMillis(90) + "ms p99="
+				+ getFrameDurationPercentileMillis(99) + "ms overBudget="
+				+ mFramesOverBudget + " touchToFrame p90="
+				+ getTouchToFramePercentileMillis(90) + "ms reorders="
+				+ mReorderCount + " layouts=" + mLayoutCount + " duration="
+				+ mDurationMillis + "ms";
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Authored by Anton Kuhlevskyi <anton.kuhleskiy@gmail.com>
+ */
+package org.androfarsh.widget;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * Records touch events received by a {@link DragGridLayout} together with the
+ * layout state at the moment the recording started. The result is written in
+ * a compact binary form which {@link GestureReplayer} can play back.
+ * <p>
+ * Events are kept in growing primitive arrays, so recording doesn't allocate
+ * per event once the arrays are large enough.
+ */
+public class GestureRecorder {
+	static final int MAGIC = 0x44474752; // DGGR
+
+	static final int VERSION = 1;
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private int mWidth;
+	private int mHeight;
+	private int mCellCount;
+	private boolean mEditMode;
+
+	// x, y, horizontal size, vertical size per widget
+	private int[] mChildren = new int[0];
+
+	private int mEventCount;
+	private int[] mActions = new int[INITIAL_CAPACITY];
+	private long[] mTimes = new long[INITIAL_CAPACITY];
+	private float[] mXs = new float[INITIAL_CAPACITY];
+	private float[] mYs = new float[INITIAL_CAPACITY];
+
+	private DragGridLayout mLayout;
+
+	/**
+	 * Captures the current state of the layout and starts recording its touch
+	 * events.
+	 */
+	public void start(DragGridLayout layout) {
+		stop();
+
+		mLayout = layout;
+		mWidth = layout.getWidth();
+		mHeight = layout.getHeight();
+		mCellCount = layout.getCellCount();
+		mEditMode = layout.isEditMode();
+		mEventCount = 0;
+
+		final View rootView = layout.getRootView();
+		final int count = layout.getChildCount();
+		mChildren = new int[(count - (rootView != null ? 1 : 0)) * 4];
+		int i = 0;
+		for (int index = 0; index < count; ++index) {
+			final View child = layout.getChildAt(index);
+			if (child == rootView) {
+				continue;
+			}
+			final DragGridLayout.LayoutParams lp = (DragGridLayout.LayoutParams) child
+					.getLayoutParams();
+			mChildren[i++] = lp.mX;
+			mChildren[i++] = lp.mY;
+			mChildren[i++] = lp.mHorizontalSize;
+			mChildren[i++] = lp.mVerticalSize;
+		}
+
+		layout.setGestureRecorder(this);
+	}
+
+	public void stop() {
+		if (mLayout != null) {
+			mLayout.setGestureRecorder(null);
+			mLayout = null;
+		}
+	}
+
+	public boolean isRecording() {
+		return mLayout != null;
+	}
+
+	public int getEventCount() {
+		return mEventCount;
+	}
+
+	void record(MotionEvent ev) {
+		if (mEventCount == mActions.length) {
+			grow();
+		}
+		mActions[mEventCount] = ev.getActionMasked();
+		mTimes[mEventCount] = ev.getEventTime();
+		mXs[mEventCount] = ev.getX();
+		mYs[mEventCount] = ev.getY();
+		++mEventCount;
+	}
+
+	private void grow() {
+		final int capacity = mActions.length * 2;
+
+		final int[] actions = new int[capacity];
+		final long[] times = new long[capacity];
+		final float[] xs = new float[capacity];
+		final float[] ys = new float[capacity];
+		System.arraycopy(mActions, 0, actions, 0, mEventCount);
+		System.arraycopy(mTimes, 0, times, 0, mEventCount);
+		System.arraycopy(mXs, 0, xs, 0, mEventCount);
+		System.arraycopy(mYs, 0, ys, 0, mEventCount);
+
+		mActions = actions;
+		mTimes = times;
+		mXs = xs;
+		mYs = ys;
+	}
+
+	/**
+	 * Writes the recording. Event times are stored as offsets from the first
+	 * event in milliseconds.
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		final DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+
+		data.writeInt(mWidth);
+		data.writeInt(mHeight);
+		data.writeInt(mCellCount);
+		data.writeBoolean(mEditMode);
+
+		data.writeInt(mChildren.length / 4);
+		for (final int value : mChildren) {
+			data.writeInt(value);
+		}
+
+		data.writeInt(mEventCount);
+		final long startTime = mEventCount > 0 ? mTimes[0] : 0;
+		for (int i = 0; i < mEventCount; ++i) {
+			data.writeByte(mActions[i]);
+			data.writeInt((int) (mTimes[i] - startTime));
+			data.writeFloat(mXs[i]);
+			data.writeFloat(mYs[i]);
+		}
+		data.flush();
+	}
+}
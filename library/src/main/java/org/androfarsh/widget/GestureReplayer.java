@@ -0,0 +1,242 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Authored by Anton Kuhlevskyi <anton.kuhleskiy@gmail.com>
+ */
+package org.androfarsh.widget;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.View.MeasureSpec;
+
+/**
+ * Plays a recording made by {@link GestureRecorder} back against a
+ * {@link DragGridLayout} without attaching it to a window, and reports the
+ * time spent in every phase of the layout.
+ * <p>
+ * Replay doesn't wait for the recorded timestamps: the long hover which
+ * triggers a reorder is fired as soon as the recorded gap between events
+ * exceeds its timeout, so every run does the same work.
+ */
+public class GestureReplayer {
+	public static class Recording {
+		int width;
+		int height;
+		int cellCount;
+		boolean editMode;
+
+		int[] children;
+
+		int eventCount;
+		int[] actions;
+		long[] times;
+		float[] xs;
+		float[] ys;
+
+		public int getEventCount() {
+			return eventCount;
+		}
+
+		public int getChildCount() {
+			return children.length / 4;
+		}
+	}
+
+	/**
+	 * Phase timings of a replay, phases are named as in
+	 * {@link DragGridMetrics#getPhaseName(int)}.
+	 */
+	public static class Report {
+		final DragGridMetrics metrics = new DragGridMetrics();
+
+		int events;
+
+		long totalNanos;
+
+		public int getEventCount() {
+			return events;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public long getPhaseNanos(String phase) {
+			for (int i = 0; i < DragGridMetrics.PHASE_COUNT; ++i) {
+				if (DragGridMetrics.getPhaseName(i).equals(phase)) {
+					return metrics.getTotalNanos(i);
+				}
+			}
+			throw new IllegalArgumentException("Unknown phase " + phase);
+		}
+
+		public DragGridMetrics getMetrics() {
+			return metrics;
+		}
+
+		@Override
+		public String toString() {
+			return "events=" + events + " total=" + (totalNanos / 1000)
+					+ "us\n" + metrics;
+		}
+	}
+
+	public static Recording read(InputStream in) throws IOException {
+		final DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != GestureRecorder.MAGIC) {
+			throw new IOException("Not a gesture recording");
+		}
+		final int version = data.readUnsignedByte();
+		if (version != GestureRecorder.VERSION) {
+			throw new IOException("Unsupported recording version " + version);
+		}
+
+		final Recording recording = new Recording();
+		recording.width = data.readInt();
+		recording.height = data.readInt();
+		recording.cellCount = data.readInt();
+		recording.editMode = data.readBoolean();
+
+		recording.children = new int[data.readInt() * 4];
+		for (int i = 0; i < recording.children.length; ++i) {
+			recording.children[i] = data.readInt();
+		}
+
+		final int count = data.readInt();
+		recording.eventCount = count;
+		recording.actions = new int[count];
+		recording.times = new long[count];
+		recording.xs = new float[count];
+		recording.ys = new float[count];
+		for (int i = 0; i < count; ++i) {
+			recording.actions[i] = data.readUnsignedByte();
+			recording.times[i] = data.readInt();
+			recording.xs[i] = data.readFloat();
+			recording.ys[i] = data.readFloat();
+		}
+		return recording;
+	}
+
+	private final Bitmap mBitmap;
+
+	private final Canvas mCanvas;
+
+	public GestureReplayer(int width, int height) {
+		mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		mCanvas = new Canvas(mBitmap);
+	}
+
+	/**
+	 * Restores the recorded state of the layout, which must have the same
+	 * widgets as the recorded one, and dispatches the recorded events to it.
+	 */
+	public Report replay(DragGridLayout layout, Recording recording) {
+		final Report report = new Report();
+		restore(layout, recording);
+
+		final DragGridLayout.OnPerformanceListener prevListener = layout
+				.getPerformanceListener();
+		layout.setPerformanceListener(report.metrics);
+		try {
+			final long startNanos = System.nanoTime();
+			final long downTime = SystemClock.uptimeMillis();
+
+			long hoverSince = -1;
+			for (int i = 0; i < recording.eventCount; ++i) {
+				final long time = recording.times[i];
+				if ((hoverSince >= 0)
+						&& ((time - hoverSince) >= DragGridLayout.LONGHOVER_TIMEOUT)) {
+					layout.performLongHover();
+					hoverSince = -1;
+					frame(layout);
+				}
+
+				final MotionEvent ev = MotionEvent.obtain(downTime, downTime
+						+ time, recording.actions[i], recording.xs[i],
+						recording.ys[i], 0);
+				layout.dispatchTouchEvent(ev);
+				ev.recycle();
+				++report.events;
+
+				if (!layout.isLongHoverPending()) {
+					hoverSince = -1;
+				} else if (hoverSince < 0) {
+					hoverSince = time;
+				}
+				frame(layout);
+			}
+			report.totalNanos = System.nanoTime() - startNanos;
+		} finally {
+			layout.setPerformanceListener(prevListener);
+		}
+		return report;
+	}
+
+	private void restore(DragGridLayout layout, Recording recording) {
+		final View rootView = layout.getRootView();
+		final int count = layout.getChildCount()
+				- (rootView != null ? 1 : 0);
+		if (count != recording.getChildCount()) {
+			throw new IllegalArgumentException("Layout has " + count
+					+ " widgets, the recording has "
+					+ recording.getChildCount());
+		}
+
+		layout.setEditMode(false);
+		layout.setCellCount(recording.cellCount);
+
+		int i = 0;
+		for (int index = 0; index < layout.getChildCount(); ++index) {
+			final View child = layout.getChildAt(index);
+			if (child == rootView) {
+				continue;
+			}
+			final DragGridLayout.LayoutParams lp = (DragGridLayout.LayoutParams) child
+					.getLayoutParams();
+			lp.setPosition(recording.children[i], recording.children[i + 1]);
+			lp.setHorizontalSize(recording.children[i + 2]);
+			lp.setVerticalSize(recording.children[i + 3]);
+			child.setLayoutParams(lp);
+			i += 4;
+		}
+
+		layout.measure(MeasureSpec.makeMeasureSpec(recording.width,
+				MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(
+				recording.height, MeasureSpec.EXACTLY));
+		layout.layout(0, 0, recording.width, recording.height);
+		layout.setEditMode(recording.editMode);
+	}
+
+	private void frame(DragGridLayout layout) {
+		if (layout.isLayoutRequested()) {
+			layout.measure(MeasureSpec.makeMeasureSpec(layout.getWidth(),
+					MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(
+					layout.getHeight(), MeasureSpec.EXACTLY));
+			layout.layout(layout.getLeft(), layout.getTop(),
+					layout.getRight(), layout.getBottom());
+		}
+		mBitmap.eraseColor(0);
+		layout.draw(mCanvas);
+	}
+
+	public void release() {
+		mBitmap.recycle();
+	}
+}
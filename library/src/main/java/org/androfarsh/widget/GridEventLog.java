@@ -0,0 +1,155 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Authored by Anton Kuhlevskyi <anton.kuhleskiy@gmail.com>
+ */
+package org.androfarsh.widget;
+
+import java.io.PrintWriter;
+
+import android.os.SystemClock;
+
+/**
+ * Fixed size ring buffer of primitive event records kept by
+ * {@link DragGridLayout} for post-mortem diagnostics.
+ * <p>
+ * Records are written into preallocated arrays, so logging costs a few
+ * stores and can stay on in production. The buffer is meant to be used from
+ * the UI thread and dumped on demand.
+ */
+public final class GridEventLog {
+	public static final int TYPE_DOWN = 1;
+	public static final int TYPE_MOVE = 2;
+	public static final int TYPE_UP = 3;
+	public static final int TYPE_CANCEL = 4;
+	/** x and y hold the fling velocity */
+	public static final int TYPE_FLING = 5;
+	public static final int TYPE_DRAG = 6;
+	public static final int TYPE_DROP = 7;
+	public static final int TYPE_REORDER = 8;
+	public static final int TYPE_REVERT = 9;
+	/** x holds 1 when edit mode is turned on, 0 otherwise */
+	public static final int TYPE_EDIT_MODE = 10;
+	/** x and y hold the new spans of the resized child */
+	public static final int TYPE_RESIZE = 11;
+
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private static final String[] TYPE_NAMES = new String[] { "?", "down",
+			"move", "up", "cancel", "fling", "drag", "drop", "reorder",
+			"revert", "editMode", "resize" };
+
+	private final int[] mTypes;
+	private final long[] mTimes;
+	private final float[] mXs;
+	private final float[] mYs;
+	private final int[] mCells;
+	private final int[] mChildIds;
+
+	private int mNext;
+
+	private long mTotal;
+
+	public GridEventLog() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public GridEventLog(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity should be positive");
+		}
+		mTypes = new int[capacity];
+		mTimes = new long[capacity];
+		mXs = new float[capacity];
+		mYs = new float[capacity];
+		mCells = new int[capacity];
+		mChildIds = new int[capacity];
+	}
+
+	/**
+	 * @param cell
+	 *            row-major index of the cell or -1
+	 * @param childId
+	 *            id of the involved child or {@link android.view.View#NO_ID}
+	 */
+	public void log(int type, float x, float y, int cell, int childId) {
+		final int i = mNext;
+		mTypes[i] = type;
+		mTimes[i] = SystemClock.uptimeMillis();
+		mXs[i] = x;
+		mYs[i] = y;
+		mCells[i] = cell;
+		mChildIds[i] = childId;
+
+		mNext = (i + 1) % mTypes.length;
+		++mTotal;
+	}
+
+	public int getCapacity() {
+		return mTypes.length;
+	}
+
+	/**
+	 * @return number of records currently held
+	 */
+	public int size() {
+		return (int) Math.min(mTotal, mTypes.length);
+	}
+
+	/**
+	 * @return number of records logged since creation or the last
+	 *         {@link #clear()}, including overwritten ones
+	 */
+	public long getTotalCount() {
+		return mTotal;
+	}
+
+	public void clear() {
+		mNext = 0;
+		mTotal = 0;
+	}
+
+	/**
+	 * Prints held records, oldest first.
+	 */
+	public void dump(PrintWriter writer) {
+		final int size = size();
+		writer.print("GridEventLog: ");
+		writer.print(size);
+		writer.print(" of ");
+		writer.print(mTotal);
+		writer.println(" records");
+
+		int i = (mNext - size + mTypes.length) % mTypes.length;
+		for (int n = 0; n < size; ++n) {
+			writer.print(mTimes[i]);
+			writer.print(' ');
+			writer.print(getTypeName(mTypes[i]));
+			writer.print(" x=");
+			writer.print(mXs[i]);
+			writer.print(" y=");
+			writer.print(mYs[i]);
+			writer.print(" cell=");
+			writer.print(mCells[i]);
+			writer.print(" id=");
+			writer.println(mChildIds[i]);
+			i = (i + 1) % mTypes.length;
+		}
+		writer.flush();
+	}
+
+	private static String getTypeName(int type) {
+		return (type > 0) && (type < TYPE_NAMES.length) ? TYPE_NAMES[type]
+				: TYPE_NAMES[0];
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Authored by Anton Kuhlevskyi <anton.kuhleskiy@gmail.com>
+ */
+package org.androfarsh.widget;
+
+import java.lang.reflect.Method;
+
+import android.os.Trace;
+
+/**
+ * System trace sections and counters of {@link DragGridLayout}.
+ * <p>
+ * Call sites are guarded by {@link #ENABLED}, which is a compile time
+ * constant, so tracing is stripped from the build while it is off. Flip it
+ * locally to see grid work in systrace/perfetto next to RenderThread and
+ * input.
+ */
+final class GridTrace {
+	static final boolean ENABLED = false;
+
+	static final String SECTION_TOUCH = "DragGrid:touch";
+	static final String SECTION_HOVER = "DragGrid:hover";
+	static final String SECTION_REORDER = "DragGrid:reorder";
+	static final String SECTION_SNAPSHOT = "DragGrid:snapshot";
+	static final String SECTION_GRID_DRAW = "DragGrid:drawGrid";
+	static final String SECTION_CHILD_DRAW = "DragGrid:drawChild";
+
+	static final String COUNTER_HOVERED_CELLS = "DragGrid:hoveredCells";
+	static final String COUNTER_DISPLACED_NODES = "DragGrid:displacedNodes";
+	static final String COUNTER_SNAPSHOT_BYTES = "DragGrid:snapshotBytes";
+	static final String COUNTER_SNAPSHOT_CACHE_BYTES = "DragGrid:snapshotCacheBytes";
+
+	// Trace.setCounter() is public since API 29 only
+	private static Method sSetCounter;
+
+	private static boolean sSetCounterResolved;
+
+	private GridTrace() {
+	}
+
+	static void beginSection(String name) {
+		Trace.beginSection(name);
+	}
+
+	static void endSection() {
+		Trace.endSection();
+	}
+
+	static void setCounter(String name, long value) {
+		if (!sSetCounterResolved) {
+			sSetCounterResolved = true;
+			try {
+				sSetCounter = Trace.class.getMethod("setCounter",
+						String.class, long.class);
+			} catch (final NoSuchMethodException e) {
+				sSetCounter = null;
+			}
+		}
+
+		if (sSetCounter != null) {
+			try {
+				sSetCounter.invoke(null, name, value);
+			} catch (final Exception e) {
+				sSetCounter = null;
+			}
+		}
+	}
+}
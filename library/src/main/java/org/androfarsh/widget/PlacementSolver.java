@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Authored by Anton Kuhlevskyi <anton.kuhleskiy@gmail.com>
+ */
+package org.androfarsh.widget;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+
+import org.androfarsh.grid.GridModel;
+import org.androfarsh.grid.PlacementPlanner;
+
+/**
+ * Solves placement and reorder plans of {@link DragGridLayout} on a worker
+ * executor.
+ * <p>
+ * A plan is solved against a private copy of the occupancy taken when it is
+ * submitted, and handed back on the UI thread. Plans carry the generation
+ * they were made at, the layout drops the ones which went stale meanwhile.
+ * When the executor is a {@link ForkJoinPool} first fit searches of large
+ * grids are split over its workers, see
+ * {@link org.androfarsh.grid.ParallelFirstFit}.
+ */
+final class PlacementSolver {
+	interface Callback {
+		void onSolved(Plan plan);
+	}
+
+	/**
+	 * Views to place in order, each one is moved out of its own cells (if it
+	 * has an owner) and kept at its preferred cell when that is free, or put
+	 * to the first free one otherwise.
+	 */
+	static final class Plan {
+		final int generation;
+
+		int size;
+
+		final View[] views;
+		final int[] owners;
+		final int[] preferredCells;
+		final int[] horizontalSizes;
+		final int[] verticalSizes;
+
+		/** Solved left-top cells, {@link GridModel#NO_CELL} if out of room */
+		final int[] cells;
+
+		Plan(int generation, int capacity) {
+			this.generation = generation;
+			views = new View[capacity];
+			owners = new int[capacity];
+			preferredCells = new int[capacity];
+			horizontalSizes = new int[capacity];
+			verticalSizes = new int[capacity];
+			cells = new int[capacity];
+		}
+
+		void add(View view, int owner, int preferredCell, int horizontalSize,
+				int verticalSize) {
+			views[size] = view;
+			owners[size] = owner;
+			preferredCells[size] = preferredCell;
+			horizontalSizes[size] = horizontalSize;
+			verticalSizes[size] = verticalSize;
+			cells[size] = GridModel.NO_CELL;
+			++size;
+		}
+	}
+
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+	private final Executor mExecutor;
+
+	PlacementSolver(Executor executor) {
+		mExecutor = executor;
+	}
+
+	Executor getExecutor() {
+		return mExecutor;
+	}
+
+	void submit(GridModel grid, final Plan plan, final Callback callback) {
+		final GridModel snapshot = new GridModel();
+		snapshot.set(grid);
+		mExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				solve(snapshot, plan,
+						mExecutor instanceof ForkJoinPool ? (ForkJoinPool) mExecutor
+								: null);
+				mHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						callback.onSolved(plan);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * @param pool
+	 *            pool to search free cells on or null to search serially,
+	 *            either way the plan gets the same cells
+	 */
+	static void solve(GridModel grid, Plan plan, ForkJoinPool pool) {
+		PlacementPlanner.place(grid, plan.size, plan.owners,
+				plan.preferredCells, plan.horizontalSizes, plan.verticalSizes,
+				plan.cells, pool);
+	}
+}